@@ -0,0 +1,215 @@
+package agents;
+import loveletter.*;
+
+/**
+ * Keeps a probability distribution over the card held by each opponent, from the point of view
+ * of one player. The distribution of an opponent is the number of copies of each card the player
+ * has not seen, weighted by evidence collected from the actions seen this round:
+ * Guard misses, Baron outcomes and ties, Prince discards, King swaps and the plays themselves.
+ * Cards the State reveals to the player are certain.
+ * Each action is folded in with a constant amount of work on fixed-size primitive arrays;
+ * an Observation from the game engine gives the effects directly, otherwise they are found in the State.
+ * */
+public class BeliefTracker {
+
+    private int num; // the number of players in the game
+    private State current; // the observed state of the round
+    private final double[] evidence = new double[4*8]; // evidence[p*8+k] weight of player p holding card k
+    private final boolean[] alive = new boolean[4]; // whether each player was still in the round
+    private final double[] prior = new double[8]; // scratch array for the unseen copies of each card
+
+    /**
+     * Resets the beliefs at the start of a round
+     * @param start the starting state of the round, observed by the tracking player
+     * **/
+    public void newRound(State start) {
+        current = start;
+        num = start.numPlayers();
+        java.util.Arrays.fill(evidence, 1.0);
+        for(int p=0; p<4; p++) {
+            alive[p] = p < num;
+        }
+    }
+
+    /**
+     * Updates the beliefs after an action, finding its effects in the State
+     * @param act the action performed
+     * @param results the state of play after the action
+     * **/
+    public void see(Action act, State results) {
+        current = results;
+        int a = act.player();
+        int eliminated = -1;
+        for(int p=0; p<num; p++) {
+            if(alive[p] && results.eliminated(p)) {
+                eliminated = p;
+            }
+        }
+        boolean blocked = act.target() != -1 && act.card() != Card.PRINCE && results.allHandmaid(a);
+        fold(act, blocked, eliminated, eliminated == -1 ? null : lastDiscard(results, eliminated), results);
+    }
+
+    /**
+     * Updates the beliefs after an action, from the effects the game engine observed
+     * @param obs the observation of the action
+     * @param results the state of play after the action
+     * **/
+    public void observe(Observation obs, State results) {
+        current = results;
+        int eliminated = obs.eliminated();
+        fold(obs.action(), obs.blocked(), eliminated, eliminated == -1 ? null : obs.discard(), results);
+    }
+
+    /**
+     * Folds the effects of an action into the evidence
+     * @param act the action performed
+     * @param blocked whether the target was protected by the Handmaid
+     * @param eliminated the player eliminated by the action, or -1
+     * @param lost the card the eliminated player discarded, or null
+     * @param results the state of play after the action
+     * **/
+    private void fold(Action act, boolean blocked, int eliminated, Card lost, State results) {
+        int a = act.player();
+        int t = act.target();
+        Card c = act.card();
+
+        // the player keeps either their old card or the card they drew
+        if(eliminated != a) {
+            for(int k=0; k<8; k++) {
+                evidence[a*8+k] = 0.5*evidence[a*8+k] + 0.5;
+            }
+        }
+
+        switch(c) {
+            case GUARD:
+                if(eliminated != t && !blocked) {
+                    evidence[t*8+act.guess().ordinal()] = 0;
+                }
+                break;
+            case BARON:
+                if(eliminated == -1 && !blocked) {
+                    // a tie, both players hold the same card: of the c copies unseen, c ways for one player
+                    // and c-1 for the other, and as the weight of a card is multiplied by c, the evidence takes c-1,
+                    // so a card of which only one copy is unseen cannot be the tie
+                    for(int k=0; k<8; k++) {
+                        double both = evidence[a*8+k]*evidence[t*8+k]*Math.max(0, unseenCopies(results, k)-1);
+                        evidence[a*8+k] = both;
+                        evidence[t*8+k] = both;
+                    }
+                } else if(eliminated != -1) {
+                    // the winner holds a higher card than the loser's, which is now discarded
+                    int winner = eliminated == a ? t : a;
+                    int value = lost.value();
+                    for(int k=0; k<8 && k<value; k++) {
+                        evidence[winner*8+k] = 0;
+                    }
+                }
+                break;
+            case PRINCE:
+                if(eliminated != t) {
+                    // the target discarded their card and drew a fresh one
+                    for(int k=0; k<8; k++) {
+                        evidence[t*8+k] = 1.0;
+                    }
+                }
+                break;
+            case KING:
+                if(!blocked) {
+                    for(int k=0; k<8; k++) {
+                        double tmp = evidence[a*8+k];
+                        evidence[a*8+k] = evidence[t*8+k];
+                        evidence[t*8+k] = tmp;
+                    }
+                }
+                break;
+            default:
+        }
+
+        if(eliminated != -1) {
+            alive[eliminated] = false;
+        }
+    }
+
+    /**
+     * returns the probability the player holds the card, as far as the tracking player knows
+     * @param player the index of the player
+     * @param card the card
+     * @return the probability the player currently holds the card, or 0 if they are eliminated
+     * **/
+    public double probability(int player, Card card) {
+        if(current.eliminated(player)) {
+            return 0;
+        }
+        Card known = current.getCard(player);
+        if(known != null) {
+            return known == card ? 1 : 0;
+        }
+        double total = unseenWeights(player);
+        return total == 0 ? 0 : prior[card.ordinal()]/total;
+    }
+
+    /**
+     * Finds the card the player most likely holds, other than the Guard
+     * @param player the index of the player
+     * @return the most likely non-Guard card, or null if the player is eliminated
+     * **/
+    public Card mostLikely(int player) {
+        if(current.eliminated(player)) {
+            return null;
+        }
+        Card known = current.getCard(player);
+        if(known != null && known != Card.GUARD) {
+            return known;
+        }
+        unseenWeights(player);
+        int best = 1;
+        for(int k=2; k<8; k++) {
+            if(prior[k] > prior[best]) {
+                best = k;
+            }
+        }
+        return Card.values()[best];
+    }
+
+    /**
+     * Fills the prior array with the weight of each card for a player whose card is not known,
+     * i.e. the copies the tracking player has not seen times the evidence for the player
+     * @param player the index of the player
+     * @return the sum of the weights
+     * **/
+    private double unseenWeights(int player) {
+        double total = 0;
+        for(int k=0; k<8; k++) {
+            prior[k] = Math.max(0, unseenCopies(current, k))*evidence[player*8+k];
+            total += prior[k];
+        }
+        return total;
+    }
+
+    /**
+     * Counts the copies of a card the tracking player has not seen, in the discards or in a hand they know
+     * @param state the state of play
+     * @param k the ordinal of the card
+     * @return the copies unseen
+     * **/
+    private int unseenCopies(State state, int k) {
+        int copies = state.unseenCount(Card.values()[k]);
+        for(int p=0; p<num; p++) {
+            Card held = state.eliminated(p) ? null : state.getCard(p);
+            if(held != null && held.ordinal() == k) {
+                copies--;
+            }
+        }
+        return copies;
+    }
+
+    /**
+     * helper method to get the most recent discard of a player
+     * @param results the state of play
+     * @param player the index of the player
+     * @return the card on top of the player's discard pile
+     * **/
+    private static Card lastDiscard(State results, int player) {
+        return results.getDiscards(player).next();
+    }
+}
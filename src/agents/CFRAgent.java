@@ -0,0 +1,146 @@
+package agents;
+import loveletter.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An agent which plays the average strategy found by the CFRTrainer in 2 player games,
+ * by looking up its information set in a CFRTable.
+ * The information set is encoded in 25 bits, from the point of view of the player to move:
+ * bits 0-2 the card in hand, 3-5 the card drawn, 6-9 the opponent's card if known (ordinal plus one, 0 if not),
+ * bit 10 the opponent's Handmaid, and bits 11-24 the copies of each card not yet discarded.
+ * The moves of an information set are the pruned moves of NodeState.getNextPlayerActions, in order.
+ * In 3 or 4 player games, or in information sets the trainer never reached,
+ * the agent plays as the Knowledge Based Agent.
+ * */
+public class CFRAgent implements Agent {
+    /** the file the trained table is read from by default **/
+    public static final String DEFAULT_FILE = "cfr.table";
+
+    private Random rand;
+    private State current;
+    private int myIndex;
+    private final CFRTable table; // the trained strategies, or null if there is no table
+    private final KnowledgeBasedAgent fallback = new KnowledgeBasedAgent(); // plays when the table cannot
+    private final double[] strategy = new double[CFRTable.MAX_ACTIONS];
+
+    //0 place default constructor
+    public CFRAgent() {
+        this(DefaultTable.TABLE);
+    }
+
+    /**
+     * Constructs an agent playing the strategies of a table
+     * @param table the trained table, or null to always play as the Knowledge Based Agent
+     * **/
+    public CFRAgent(CFRTable table) {
+        this.table = table;
+        rand = new Random();
+    }
+
+    /**
+     * Reports the agents name
+     * */
+    public String toString() {return "CFR Agent";}
+
+    /**
+     * Method called at the start of a round
+     * @param start the starting state of the round
+     **/
+    public void newRound(State start) {
+        current = start;
+        myIndex = current.getPlayerIndex();
+        fallback.newRound(start);
+    }
+
+    /**
+     * Method called when any agent performs an action.
+     * @param act the action an agent performs
+     * @param results the state of play the agent is able to observe.
+     * **/
+    public void see(Action act, State results) {
+        current = results;
+        fallback.see(act, results);
+    }
+
+    /**
+     * Perform an action after drawing a card from the deck
+     * @param c the card drawn from the deck
+     * @return the action the agent chooses to perform
+     * */
+    public Action playCard(Card c) {
+        if (table == null || current.numPlayers() != 2) {
+            return fallback.playCard(c);
+        }
+        NodeState state = new NodeState(current, c, rand);
+        List<Action> actions = state.getNextPlayerActions();
+        int slot = table.find(infoKey(state, myIndex), actions.size(), false);
+        if (slot < 0) {
+            return fallback.playCard(c);
+        }
+        table.averageStrategy(slot, actions.size(), strategy);
+        return actions.get(sample(strategy, actions.size(), rand));
+    }
+
+    /**
+     * Encodes the information set of a player in a 2 player round
+     * @param state the NodeState, where the player has drawn their card
+     * @param p the index of the player to move
+     * @return the information set encoding
+     * **/
+    static int infoKey(NodeState state, int p) {
+        int opponent = 1 - p;
+        int key = state.heldCard(p).ordinal() | state.getDrawn().ordinal() << 3;
+        if (state.knows(p, opponent)) {
+            key |= (state.heldCard(opponent).ordinal() + 1) << 6;
+        }
+        if (state.handmaid(opponent)) {
+            key |= 1 << 10;
+        }
+        int shift = 11;
+        for (Card card : Card.values()) {
+            key |= state.unseenCount(card) << shift;
+            shift += 32 - Integer.numberOfLeadingZeros(card.count());
+        }
+        return key;
+    }
+
+    /**
+     * Samples an index from a probability distribution
+     * @param strategy the probabilities
+     * @param actions the number of probabilities
+     * @param random the random number generator
+     * @return the sampled index
+     * **/
+    static int sample(double[] strategy, int actions, Random random) {
+        double r = random.nextDouble();
+        for (int a = 0; a < actions - 1; a++) {
+            r -= strategy[a];
+            if (r < 0) {
+                return a;
+            }
+        }
+        return actions - 1;
+    }
+
+    // holder class, so the default table is read once, when first used, and shared by all the agents
+    private static class DefaultTable {
+        static final CFRTable TABLE = load();
+
+        private static CFRTable load() {
+            Path file = Paths.get(DEFAULT_FILE);
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+            try {
+                return CFRTable.load(file).table;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package agents;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The regrets and average strategies of the information sets of a CFR solver, stored off-heap
+ * in a direct ByteBuffer so millions of information sets cost no garbage collection.
+ * The table is an open addressing hash table of fixed size slots, keyed by the compact
+ * information set encoding of CFRAgent.infoKey. Each slot holds:
+ * the key plus one (0 for an empty slot), the number of actions, then a float regret
+ * and a float strategy sum for each of up to MAX_ACTIONS actions.
+ * Slots are claimed and values added with compare-and-set, so many threads can train one table.
+ * The slots are big-endian, like the file header, so a saved table can be loaded on any machine.
+ * */
+public class CFRTable {
+    /** the most actions an information set can have in a 2 player round **/
+    public static final int MAX_ACTIONS = 10;
+    private static final int SLOT = 8 + 8 * MAX_ACTIONS; // bytes per slot
+    private static final int HEADER = 16; // bytes before the slots in a table file
+    private static final int MAX_CAPACITY = 1 << 24; // the most slots a direct buffer can hold
+    private static final int MAGIC = 0x43465232; // "CFR2", the start of a table file
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle FLOAT = MethodHandles.byteBufferViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+
+    private final int capacity; // the number of slots, a power of two
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs an empty table
+     * @param capacity the number of information sets the table can hold, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is over 2^24, the most a direct buffer can hold
+     * **/
+    public CFRTable(int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("The capacity of a CFR table is at most 2^24");
+        }
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.buffer = ByteBuffer.allocateDirect(this.capacity * SLOT).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * Finds the slot of an information set
+     * @param key the information set encoding, non-negative
+     * @param actions the number of actions of the information set
+     * @param create true to claim a slot if the information set is new
+     * @return the slot, or -1 if the information set is not in the table and was not created
+     * because create was false, the table is full or it has more than MAX_ACTIONS actions
+     * **/
+    public int find(int key, int actions, boolean create) {
+        if (actions > MAX_ACTIONS) {
+            return -1;
+        }
+        int stored = key + 1;
+        int mask = capacity - 1;
+        int slot = (key * 0x9E3779B9 >>> 7) & mask;
+        for (int probe = 0; probe < capacity; probe++, slot = (slot + 1) & mask) {
+            int offset = slot * SLOT;
+            int current = (int) INT.getVolatile(buffer, offset);
+            if (current == stored) {
+                return slot;
+            }
+            if (current == 0) {
+                if (!create) {
+                    return -1;
+                }
+                if (INT.compareAndSet(buffer, offset, 0, stored)) {
+                    INT.setVolatile(buffer, offset + 4, actions);
+                    return slot;
+                }
+                if ((int) INT.getVolatile(buffer, offset) == stored) {
+                    return slot; // another thread claimed the slot for the same key
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the current strategy by regret matching: each action in proportion to its positive regret,
+     * or uniformly if no regret is positive
+     * @param slot the slot of the information set
+     * @param actions the number of actions
+     * @param strategy the array the probabilities are written to
+     * **/
+    public void currentStrategy(int slot, int actions, double[] strategy) {
+        double total = 0;
+        for (int a = 0; a < actions; a++) {
+            strategy[a] = Math.max(0, (float) FLOAT.getVolatile(buffer, regretOffset(slot, a)));
+            total += strategy[a];
+        }
+        normalise(strategy, actions, total);
+    }
+
+    /**
+     * Computes the average strategy, which converges to an equilibrium
+     * @param slot the slot of the information set
+     * @param actions the number of actions
+     * @param strategy the array the probabilities are written to
+     * **/
+    public void averageStrategy(int slot, int actions, double[] strategy) {
+        double total = 0;
+        for (int a = 0; a < actions; a++) {
+            strategy[a] = (float) FLOAT.getVolatile(buffer, strategyOffset(slot, a));
+            total += strategy[a];
+        }
+        normalise(strategy, actions, total);
+    }
+
+    /**
+     * Adds to the regret of an action
+     * @param slot the slot of the information set
+     * @param action the index of the action
+     * @param value the amount added
+     * **/
+    public void addRegret(int slot, int action, double value) {
+        add(regretOffset(slot, action), (float) value);
+    }
+
+    /**
+     * Adds to the strategy sum of an action
+     * @param slot the slot of the information set
+     * @param action the index of the action
+     * @param value the amount added
+     * **/
+    public void addStrategy(int slot, int action, double value) {
+        add(strategyOffset(slot, action), (float) value);
+    }
+
+    /**
+     * returns the number of information sets in the table
+     * @return the number of slots in use
+     * **/
+    public int size() {
+        int used = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if ((int) INT.getVolatile(buffer, slot * SLOT) != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Writes the table to a file, replacing it atomically so a crash never leaves a partial table.
+     * Should not be called while other threads are updating the table.
+     * @param file the file to write
+     * @param iterations the number of training iterations recorded in the file
+     * @throws IOException if the file cannot be written
+     * **/
+    public void save(Path file, long iterations) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(capacity).putLong(iterations).flip();
+            writeFully(channel, header);
+            writeFully(channel, buffer.duplicate().clear());
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a table written by save
+     * @param file the file to read
+     * @return the table and the number of iterations it was trained for
+     * @throws IOException if the file cannot be read or is not a table
+     * **/
+    public static Loaded load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a CFR table");
+            }
+            int capacity = header.getInt();
+            if (capacity < 4 || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1
+                    || channel.size() != HEADER + (long) capacity * SLOT) {
+                throw new IOException(file + " has a corrupt CFR table header");
+            }
+            CFRTable table = new CFRTable(capacity);
+            long iterations = header.getLong();
+            readFully(channel, table.buffer.duplicate().clear());
+            return new Loaded(table, iterations);
+        }
+    }
+
+    /**
+     * A table read from a file, with the number of iterations it was trained for
+     * */
+    public static class Loaded {
+        public final CFRTable table;
+        public final long iterations;
+
+        Loaded(CFRTable table, long iterations) {
+            this.table = table;
+            this.iterations = iterations;
+        }
+    }
+
+    // adds a value to a float with a compare-and-set loop
+    private void add(int offset, float value) {
+        float old;
+        do {
+            old = (float) FLOAT.getVolatile(buffer, offset);
+        } while (!FLOAT.weakCompareAndSet(buffer, offset, old, old + value));
+    }
+
+    private static int regretOffset(int slot, int action) {
+        return slot * SLOT + 8 + 4 * action;
+    }
+
+    private static int strategyOffset(int slot, int action) {
+        return slot * SLOT + 8 + 4 * MAX_ACTIONS + 4 * action;
+    }
+
+    private static void normalise(double[] strategy, int actions, double total) {
+        for (int a = 0; a < actions; a++) {
+            strategy[a] = total > 0 ? strategy[a] / total : 1.0 / actions;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target) < 0) {
+                throw new IOException("The CFR table file is truncated");
+            }
+        }
+    }
+}
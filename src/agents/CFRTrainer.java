@@ -0,0 +1,247 @@
+package agents;
+import loveletter.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Trains the strategies of the CFRAgent for 2 player rounds with external sampling Monte Carlo
+ * counterfactual regret minimisation. Each iteration deals a round and, for each player in turn,
+ * explores all of that player's moves while sampling the draws and the opponent's moves from the
+ * current strategies. A player's utility is 1 for winning the round and 0 for losing it.
+ * The iterations run on all cores, updating one shared CFRTable, and the table is checkpointed
+ * to disk between phases, so training can be stopped and resumed from the last checkpoint.
+ * Run with: java agents.CFRTrainer [iterations] [threads] [file] [capacity]
+ * */
+public class CFRTrainer {
+    private static final int CHECKPOINTS = 10; // the number of phases, each ending with a checkpoint
+    private static final int MAX_LEVEL = 16; // more than the moves of one player in a round
+
+    private final CFRTable table;
+    private final ExecutorService pool;
+    private final int threads;
+    private long iterations; // the iterations trained so far, including those of a resumed table
+
+    /**
+     * Constructs a trainer
+     * @param table the table to be trained, which may already hold strategies
+     * @param iterations the number of iterations the table has already been trained for
+     * @param threads the number of threads to train with
+     * **/
+    public CFRTrainer(CFRTable table, long iterations, int threads) {
+        this.table = table;
+        this.iterations = iterations;
+        this.threads = threads;
+        this.pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Runs a number of iterations, split between the threads
+     * @param count the number of iterations
+     * @param seed the seed of the deals and the sampling
+     * @throws InterruptedException if the thread is interrupted while waiting for the iterations
+     * **/
+    public void train(long count, long seed) throws InterruptedException {
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int t = 0; t < threads; t++) {
+            long share = count / threads + (t < count % threads ? 1 : 0);
+            Traversal traversal = new Traversal(new Random(seed * 31 + t));
+            tasks.add(() -> {
+                for (long i = 0; i < share; i++) {
+                    traversal.iteration();
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : pool.invokeAll(tasks)) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A CFR iteration failed", e.getCause());
+        }
+        iterations += count;
+    }
+
+    /**
+     * returns the number of iterations the table has been trained for
+     * @return the number of iterations
+     * **/
+    public long iterations() {
+        return iterations;
+    }
+
+    /**
+     * Stops the training threads
+     * **/
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * The traversals of one thread, with its own random number generator and scratch arrays
+     * */
+    private class Traversal {
+        private final Random random;
+        private final NodeState[] stack = new NodeState[MAX_LEVEL]; // scratch NodeStates, one for each level
+        private final double[][] strategies = new double[MAX_LEVEL][CFRTable.MAX_ACTIONS];
+        private final double[][] utilities = new double[MAX_LEVEL][CFRTable.MAX_ACTIONS];
+        private final int[] counts = new int[8];
+
+        Traversal(Random random) {
+            this.random = random;
+        }
+
+        /**
+         * Deals a round and traverses it once for each player
+         * **/
+        void iteration() {
+            NodeState deal = new NodeState(random, new Agent[2]);
+            for (int i = 0; i < 2; i++) {
+                traverse(scratch(0, deal), i, 1);
+            }
+        }
+
+        /**
+         * Traverses a round from a NodeState, updating the regrets of the traversing player and
+         * the average strategy of the other player
+         * @param state the NodeState, which is modified
+         * @param traverser the index of the player whose regrets are updated
+         * @param level the index of the scratch arrays for this traversal
+         * @return the traverser's utility, sampled over the draws and the other player's moves
+         * **/
+        private double traverse(NodeState state, int traverser, int level) {
+            while (!state.roundOver()) {
+                if (state.getDrawn() == null) {
+                    state.drawCard(sampleDraw(state));
+                    continue;
+                }
+                int mover = state.nextPlayer();
+                List<Action> actions = state.getNextPlayerActions();
+                int n = actions.size();
+                int slot = table.find(CFRAgent.infoKey(state, mover), n, true);
+                double[] strategy = strategies[level];
+                if (slot < 0) {
+                    // the table is full or there are too many actions, so play uniformly without learning
+                    java.util.Arrays.fill(strategy, 0, Math.min(n, strategy.length), 1.0 / n);
+                } else {
+                    table.currentStrategy(slot, n, strategy);
+                }
+
+                if (mover != traverser || slot < 0) {
+                    if (mover != traverser && slot >= 0) {
+                        for (int a = 0; a < n; a++) {
+                            table.addStrategy(slot, a, strategy[a]);
+                        }
+                    }
+                    int a = slot < 0 ? random.nextInt(n) : CFRAgent.sample(strategy, n, random);
+                    apply(state, actions.get(a));
+                    continue;
+                }
+
+                double[] utility = utilities[level];
+                double value = 0;
+                for (int a = 0; a < n; a++) {
+                    NodeState child = scratch(level, state);
+                    apply(child, actions.get(a));
+                    utility[a] = traverse(child, traverser, level + 1);
+                    value += strategy[a] * utility[a];
+                }
+                for (int a = 0; a < n; a++) {
+                    table.addRegret(slot, a, utility[a] - value);
+                }
+                return value;
+            }
+            return state.roundWinner() == traverser ? 1 : 0;
+        }
+
+        /**
+         * Samples the next player's draw from the remaining deck
+         * @param state the NodeState of the game engine
+         * @return the card drawn
+         * **/
+        private Card sampleDraw(NodeState state) {
+            int r = random.nextInt(state.drawCounts(counts));
+            for (int k = 0; k < 8; k++) {
+                r -= counts[k];
+                if (r < 0) {
+                    return Card.values()[k];
+                }
+            }
+            throw new IllegalStateException("The deck is empty");
+        }
+
+        /**
+         * helper method to get a scratch NodeState holding a copy of a NodeState
+         * @param level the index of the scratch NodeState
+         * @param state the NodeState to be copied
+         * @return the scratch NodeState
+         * **/
+        private NodeState scratch(int level, NodeState state) {
+            if (stack[level] == null) {
+                stack[level] = new NodeState(state);
+            } else {
+                stack[level].copyFrom(state);
+            }
+            return stack[level];
+        }
+    }
+
+    /**
+     * helper method to apply one of the moves of getNextPlayerActions, which are all legal
+     * @param state the NodeState
+     * @param act the move
+     * **/
+    private static void apply(NodeState state, Action act) {
+        try {
+            state.applyAction(act);
+        } catch (IllegalActionException e) {
+            throw new IllegalStateException("A generated move was illegal: " + act, e);
+        }
+    }
+
+    /**
+     * Trains a table, resuming from the file if it exists, and checkpoints it to the file
+     * @param args the iterations to run (default 1000000), threads (the number of cores),
+     * the file (CFRAgent.DEFAULT_FILE) and the capacity of a new table (2^20 information sets)
+     * @throws IOException if the table cannot be read or written
+     * @throws InterruptedException if interrupted while training
+     * **/
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long count = args.length > 0 ? Long.parseLong(args[0]) : 1000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        Path file = Paths.get(args.length > 2 ? args[2] : CFRAgent.DEFAULT_FILE);
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 20;
+
+        CFRTrainer trainer;
+        if (Files.isRegularFile(file)) {
+            CFRTable.Loaded loaded = CFRTable.load(file);
+            trainer = new CFRTrainer(loaded.table, loaded.iterations, threads);
+            System.out.println("Resuming " + file + " after " + loaded.iterations + " iterations");
+        } else {
+            trainer = new CFRTrainer(new CFRTable(capacity), 0, threads);
+        }
+        try {
+            long start = System.nanoTime();
+            for (int phase = 0; phase < CHECKPOINTS; phase++) {
+                long share = count / CHECKPOINTS + (phase < count % CHECKPOINTS ? 1 : 0);
+                trainer.train(share, trainer.iterations());
+                trainer.table.save(file, trainer.iterations());
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d iterations, %d information sets, %.0f iterations/s, saved to %s%n",
+                    trainer.iterations(), trainer.table.size(), count * (phase + 1) / CHECKPOINTS / seconds, file);
+            }
+        } finally {
+            trainer.shutdown();
+        }
+    }
+}
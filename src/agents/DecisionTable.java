@@ -0,0 +1,238 @@
+package agents;
+import loveletter.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A lookup table of the Knowledge Based Agent's decisions, compiled by DecisionTableCompiler.
+ * The decision inputs are packed into a 22 bit key, with the seats relative to the player
+ * (seat 1 is the next player, seat 0 is the player themself):
+ * bits 0-2 held card, 3-5 drawn card, 6-7 seat of a known card, 8-10 the known card,
+ * 11-12 seat of the score leader, 13-15 the leader's most likely card,
+ * 16-18 mask of the seats still in the round, 19-21 mask of the seats protected by the Handmaid.
+ * Each entry is an action code of one byte:
+ * bit 0 plays the drawn card, bits 1-2 target seat, bit 3 random target, bits 4-6 Guard guess,
+ * bit 7 set for a valid action.
+ * A table file starts with a magic number, the VERSION of this layout and the name of the policy
+ * the table was built from, so an old table or another policy's table is never played by mistake.
+ * */
+public class DecisionTable {
+    /** the number of entries in a table **/
+    public static final int SIZE = 1 << 22;
+    /** the file the compiled table is read from by default **/
+    public static final String DEFAULT_FILE = "kb.table";
+    /** the version of the key and action code layout, raised whenever either changes **/
+    public static final int VERSION = 1;
+    /** the policy of the Knowledge Based Agent's rules, compiled by the DecisionTableCompiler **/
+    public static final String RULES = "rules";
+    /** the policy of the MCTS Agent, distilled by the PolicyDistiller **/
+    public static final String DISTILLED = "distilled";
+    private static final int MAGIC = 0x4B425431; // "KBT1", the start of a table file
+
+    private final byte[] codes; // the action code of each key
+
+    /**
+     * Constructs a table from the action codes
+     * @param codes the action code of each key, of length SIZE
+     * **/
+    DecisionTable(byte[] codes) {
+        if (codes.length != SIZE) {
+            throw new IllegalArgumentException("A decision table has " + SIZE + " entries");
+        }
+        this.codes = codes;
+    }
+
+    /**
+     * returns the action code for a key
+     * @param key the packed decision inputs
+     * @return the action code, which is 0 if there is no action
+     * **/
+    public int code(int key) {
+        return codes[key] & 0xff;
+    }
+
+    /**
+     * Packs the decision inputs into a key
+     * @param held the card in hand
+     * @param drawn the card drawn
+     * @param knownSeat the seat of a player whose card is known, or 0 for none
+     * @param knownCard the known card, or null for none
+     * @param leaderSeat the seat of the score leader, or 0 for none
+     * @param leaderGuess the leader's most likely card, or null for none
+     * @param aliveMask bit i-1 set if seat i is still in the round
+     * @param handmaidMask bit i-1 set if seat i is protected by the Handmaid
+     * @return the key
+     * **/
+    public static int key(Card held, Card drawn, int knownSeat, Card knownCard,
+                          int leaderSeat, Card leaderGuess, int aliveMask, int handmaidMask) {
+        return held.ordinal()
+            | drawn.ordinal() << 3
+            | knownSeat << 6
+            | (knownCard == null ? 0 : knownCard.ordinal()) << 8
+            | leaderSeat << 11
+            | (leaderGuess == null ? 0 : leaderGuess.ordinal()) << 13
+            | aliveMask << 16
+            | handmaidMask << 19;
+    }
+
+    /** @return the held card of a key **/
+    static Card held(int key) {return Card.values()[key & 7];}
+
+    /** @return the drawn card of a key **/
+    static Card drawn(int key) {return Card.values()[key >> 3 & 7];}
+
+    /** @return the seat of the known card of a key, or 0 for none **/
+    static int knownSeat(int key) {return key >> 6 & 3;}
+
+    /** @return the known card of a key, or null for none **/
+    static Card knownCard(int key) {return knownSeat(key) == 0 ? null : Card.values()[key >> 8 & 7];}
+
+    /** @return the seat of the score leader of a key, or 0 for none **/
+    static int leaderSeat(int key) {return key >> 11 & 3;}
+
+    /** @return the leader's most likely card of a key **/
+    static Card leaderGuess(int key) {return Card.values()[key >> 13 & 7];}
+
+    /** @return the mask of the seats still in the round of a key **/
+    static int aliveMask(int key) {return key >> 16 & 7;}
+
+    /** @return the mask of the seats protected by the Handmaid of a key **/
+    static int handmaidMask(int key) {return key >> 19 & 7;}
+
+    /**
+     * Packs an action into an action code
+     * @param drawn true to play the drawn card, false to play the held card
+     * @param seat the target seat, 0 for the player themself or no target
+     * @param random true if the target is to be chosen at random among the legal targets
+     * @param guess the Guard guess, or null for none
+     * @return the action code
+     * **/
+    public static int code(boolean drawn, int seat, boolean random, Card guess) {
+        return 0x80 | (drawn ? 1 : 0) | seat << 1 | (random ? 8 : 0) | (guess == null ? 0 : guess.ordinal() << 4);
+    }
+
+    /** @return true if the action code is an action **/
+    public static boolean isValid(int code) {return (code & 0x80) != 0;}
+
+    /** @return true if the action code plays the drawn card **/
+    public static boolean playsDrawn(int code) {return (code & 1) != 0;}
+
+    /** @return the target seat of the action code **/
+    public static int seat(int code) {return code >> 1 & 3;}
+
+    /** @return true if the target of the action code is chosen at random **/
+    public static boolean isRandom(int code) {return (code & 8) != 0;}
+
+    /** @return the Guard guess of the action code **/
+    public static Card guess(int code) {return Card.values()[code >> 4 & 7];}
+
+    /**
+     * Builds the action of an action code, for a code whose target is not random
+     * @param code the action code
+     * @param player the index of the player to move
+     * @param numPlayers the number of players in the game
+     * @param held the card in hand
+     * @param drawn the card drawn
+     * @return the action, or null if the code is not an action or plays the Princess
+     * **/
+    public static Action action(int code, int player, int numPlayers, Card held, Card drawn) {
+        if (!isValid(code)) {
+            return null;
+        }
+        Card play = playsDrawn(code) ? drawn : held;
+        int target = (player + seat(code)) % numPlayers;
+        try {
+            switch (play) {
+            case GUARD:
+                return Action.playGuard(player, target, guess(code));
+            case PRIEST:
+                return Action.playPriest(player, target);
+            case BARON:
+                return Action.playBaron(player, target);
+            case HANDMAID:
+                return Action.playHandmaid(player);
+            case PRINCE:
+                return Action.playPrince(player, target);
+            case KING:
+                return Action.playKing(player, target); // only in distilled tables, the rules play it at random
+            case COUNTESS:
+                return Action.playCountess(player);
+            default:
+                return null;
+            }
+        } catch (IllegalActionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the table to a gzip compressed file, after the magic number, the version and the policy
+     * @param file the name of the file
+     * @param policy the name of the policy the table was built from, e.g. RULES or DISTILLED
+     * @throws IOException if the file cannot be written
+     * **/
+    public void save(String file, String policy) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(policy);
+            out.write(codes);
+        }
+    }
+
+    /**
+     * Reads a table written by save
+     * @param file the name of the file
+     * @param policy the name of the policy the table must have been built from
+     * @return the table
+     * @throws IOException if the file cannot be read, is not a complete table,
+     * or is of another version or policy
+     * **/
+    public static DecisionTable load(String file, String policy) throws IOException {
+        byte[] codes = new byte[SIZE];
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a decision table");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a table of version " + version + ", not " + VERSION);
+            }
+            String saved = in.readUTF();
+            if (!saved.equals(policy)) {
+                throw new IOException(file + " is a table of the " + saved + " policy, not " + policy);
+            }
+            in.readFully(codes);
+        }
+        return new DecisionTable(codes);
+    }
+
+    /**
+     * returns the table used by the Knowledge Based Agent by default, read from DEFAULT_FILE
+     * if it is a table of the rules of this version, and compiled in memory otherwise.
+     * The table is built once and shared.
+     * @return the default table
+     * **/
+    public static DecisionTable defaultTable() {
+        return DefaultTable.TABLE;
+    }
+
+    // holder class, so the default table is only built when first used
+    private static class DefaultTable {
+        static final DecisionTable TABLE = build();
+
+        private static DecisionTable build() {
+            if (new java.io.File(DEFAULT_FILE).isFile()) {
+                try {
+                    return load(DEFAULT_FILE, RULES);
+                } catch (IOException e) {/*fall back to compiling the table*/}
+            }
+            return DecisionTableCompiler.compile(KnowledgeBasedPolicy::new);
+        }
+    }
+}
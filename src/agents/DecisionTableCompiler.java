@@ -0,0 +1,47 @@
+package agents;
+import java.io.IOException;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Compiles the Knowledge Based Agent's rules into a DecisionTable by deciding every key once.
+ * Run offline to write the table the agent reads at startup:
+ * java agents.DecisionTableCompiler [file] [parameters]
+ * where the parameters are the name=value pairs printed by the KnowledgeBasedTuner.
+ * */
+public class DecisionTableCompiler {
+
+    /**
+     * Decides every key of the table, splitting the keys over the available cores
+     * @param policies creates the rules to compile, one instance for each thread
+     * @return the compiled table
+     * **/
+    static DecisionTable compile(Supplier<KnowledgeBasedPolicy> policies) {
+        byte[] codes = new byte[DecisionTable.SIZE];
+        // one block of keys for each held and drawn card, each decided by its own policy
+        IntStream.range(0, 64).parallel().forEach(block -> {
+            KnowledgeBasedPolicy rules = policies.get();
+            for(int rest = 0; rest < DecisionTable.SIZE >> 6; rest++) {
+                int key = rest << 6 | block;
+                codes[key] = (byte) rules.decide(key);
+            }
+        });
+        return new DecisionTable(codes);
+    }
+
+    /**
+     * Compiles the table and writes it to a file
+     * @param args the name of the file, DecisionTable.DEFAULT_FILE if not given,
+     * and the parameters of the rules, the defaults if not given
+     * @throws IOException if the file cannot be written
+     * **/
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : DecisionTable.DEFAULT_FILE;
+        KnowledgeBasedParams params = args.length > 1 ? KnowledgeBasedParams.parse(args[1]) : KnowledgeBasedParams.defaults();
+        long start = System.nanoTime();
+        DecisionTable table = compile(() -> new KnowledgeBasedPolicy(params));
+        table.save(file, DecisionTable.RULES);
+        System.out.println("Compiled " + DecisionTable.SIZE + " decisions to " + file
+            + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+}
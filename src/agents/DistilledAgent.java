@@ -0,0 +1,44 @@
+package agents;
+
+/**
+ * An agent which plays the moves of the MCTS Agent at the speed of a table lookup,
+ * from a DecisionTable distilled by the PolicyDistiller. Each decision is keyed as the
+ * Knowledge Based Agent keys its own, and decisions the distiller never saw are those of
+ * the Knowledge Based Agent.
+ * */
+public class DistilledAgent extends KnowledgeBasedAgent {
+    /** the file the distilled table is read from by default **/
+    public static final String DEFAULT_FILE = "distilled.table";
+
+    //0 place default constructor
+    public DistilledAgent() {
+        super(DefaultTable.TABLE);
+    }
+
+    /**
+     * Constructs an agent playing the decisions of a distilled table
+     * @param table the distilled table
+     * **/
+    public DistilledAgent(DecisionTable table) {
+        super(table);
+    }
+
+    /**
+     * Reports the agents name
+     * */
+    public String toString() {return "Distilled Agent";}
+
+    // holder class, so the distilled table is read once, when first used, and shared by all the agents
+    private static class DefaultTable {
+        static final DecisionTable TABLE = load();
+
+        private static DecisionTable load() {
+            if (new java.io.File(DEFAULT_FILE).isFile()) {
+                try {
+                    return DecisionTable.load(DEFAULT_FILE, DecisionTable.DISTILLED);
+                } catch (java.io.IOException e) {/*fall back to the rules*/}
+            }
+            return DecisionTable.defaultTable();
+        }
+    }
+}
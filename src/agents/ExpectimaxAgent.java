@@ -0,0 +1,239 @@
+package agents;
+import loveletter.*;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An agent which searches a few turns ahead with depth-limited expectimax.
+ * The cards the agent has not seen are dealt into a number of determinizations of its information set,
+ * and each one is searched with the draws as chance nodes, weighted by the copies of each card
+ * the agent could see drawn. The agent maximises its chance of winning the round, and the other
+ * players are assumed to choose uniformly among their sensible moves.
+ * At the depth limit the round is scored by a static evaluation of the hands.
+ * Values are memoised by the NodeState search key, which covers the deck order and the discard values
+ * as well as the hands, so transpositions within a determinization (e.g. Guard guesses which all miss)
+ * and determinizations which deal the same cards are searched once, and no other values are shared.
+ * The determinizations are seeded from the information set, so the agent is deterministic.
+ * */
+public class ExpectimaxAgent implements Agent {
+
+    /** the default number of turns searched, including the agent's own */
+    public static final int DEFAULT_DEPTH = 2;
+    /** the default number of determinizations of the information set */
+    public static final int DEFAULT_SAMPLES = 16;
+    private static final int MEMO_BITS = 16; // the memo holds 2^MEMO_BITS values
+
+    private Random rand = new Random();
+    private State current;
+    private int myIndex;
+    private final int depth; // the number of turns searched
+    private final int samples; // the number of determinizations
+    private NodeState[] stack; // scratch NodeStates, two for each turn searched
+    private final int[][] counts; // scratch arrays for the draw counts, one for each turn searched
+    private final long[] memoKeys = new long[1 << MEMO_BITS]; // the key of each memoised value, plus one
+    private final double[] memoValues = new double[1 << MEMO_BITS];
+
+    //0 place default constructor
+    public ExpectimaxAgent() {
+        this(DEFAULT_DEPTH, DEFAULT_SAMPLES);
+    }
+
+    /**
+     * Constructs an agent with the given search limits
+     * @param depth the number of turns searched, including the agent's own, between 1 and 15
+     * @param samples the number of determinizations searched for each move
+     * **/
+    public ExpectimaxAgent(int depth, int samples) {
+        if (depth < 1 || depth > 15 || samples < 1) {
+            throw new IllegalArgumentException("The depth must be between 1 and 15 and the samples positive");
+        }
+        this.depth = depth;
+        this.samples = samples;
+        stack = new NodeState[2 * depth];
+        counts = new int[depth][8];
+    }
+
+    /**
+     * Reports the agents name
+     * */
+    public String toString() {return "Expectimax Agent";}
+
+    /**
+     * Method called at the start of a round
+     * @param start the starting state of the round
+     **/
+    public void newRound(State start) {
+        current = start;
+        myIndex = current.getPlayerIndex();
+    }
+
+    /**
+     * Method called when any agent performs an action.
+     * @param act the action an agent performs
+     * @param results the state of play the agent is able to observe.
+     * **/
+    public void see(Action act, State results) {
+        current = results;
+    }
+
+    /**
+     * Perform an action after drawing a card from the deck
+     * @param c the card drawn from the deck
+     * @return the action the agent chooses to perform
+     * */
+    public Action playCard(Card c) {
+        java.util.Arrays.fill(memoKeys, 0);
+        rand.setSeed(informationKey(c));
+        List<Action> actions = null;
+        double[] totals = null;
+        for (int s = 0; s < samples; s++) {
+            NodeState root = new NodeState(current, c, rand);
+            if (actions == null) {
+                // the agent's own moves do not depend on the determinization
+                actions = root.getNextPlayerActions();
+                totals = new double[actions.size()];
+            }
+            for (int i = 0; i < actions.size(); i++) {
+                NodeState child = scratch(0, root);
+                try {
+                    child.applyAction(actions.get(i));
+                } catch (IllegalActionException e) {
+                    totals[i] = Double.NEGATIVE_INFINITY;
+                    continue;
+                }
+                totals[i] += chance(child, 1);
+            }
+        }
+        int best = 0;
+        for (int i = 1; i < actions.size(); i++) {
+            if (totals[i] > totals[best]) {
+                best = i;
+            }
+        }
+        return actions.isEmpty() ? null : actions.get(best);
+    }
+
+    /**
+     * The value of a NodeState before the next player's draw, the expectation over the cards they may draw
+     * @param state the NodeState, which is not modified
+     * @param turn the number of turns searched so far
+     * @return the agent's chance of winning the round
+     * **/
+    private double chance(NodeState state, int turn) {
+        if (state.roundOver()) {
+            return state.roundWinner() == myIndex ? 1 : 0;
+        }
+        if (turn >= depth) {
+            return evaluate(state);
+        }
+        long key = state.searchKey() << 4 | turn;
+        int slot = (int) (key ^ key >>> 29) & ((1 << MEMO_BITS) - 1);
+        if (memoKeys[slot] == key + 1) {
+            return memoValues[slot];
+        }
+        int[] drawable = counts[turn];
+        int total = state.drawCounts(drawable);
+        double value = 0;
+        for (int k = 0; k < 8; k++) {
+            if (drawable[k] > 0) {
+                NodeState outcome = scratch(2 * turn, state);
+                outcome.drawCard(Card.values()[k]);
+                value += drawable[k] * decision(outcome, turn);
+            }
+        }
+        value /= total;
+        memoKeys[slot] = key + 1;
+        memoValues[slot] = value;
+        return value;
+    }
+
+    /**
+     * The value of a NodeState where the next player has drawn their card:
+     * the best move for the agent, or the average over the moves of another player
+     * @param state the NodeState, which is not modified
+     * @param turn the number of turns searched so far
+     * @return the agent's chance of winning the round
+     * **/
+    private double decision(NodeState state, int turn) {
+        List<Action> actions = state.getNextPlayerActions();
+        boolean mine = state.nextPlayer() == myIndex;
+        double value = 0;
+        int legal = 0;
+        for (Action act : actions) {
+            NodeState child = scratch(2 * turn + 1, state);
+            try {
+                child.applyAction(act);
+            } catch (IllegalActionException e) {
+                continue;
+            }
+            double v = chance(child, turn + 1);
+            value = mine ? Math.max(value, v) : value + v;
+            legal++;
+        }
+        if (legal == 0) {
+            return evaluate(state);
+        }
+        return mine ? value : value / legal;
+    }
+
+    /**
+     * Static evaluation of a round still in play: the agent's share of the round, moving from
+     * an even share towards the showdown of the current hands as the deck runs out
+     * @param state the NodeState
+     * @return the estimated chance of the agent winning the round
+     * **/
+    private double evaluate(NodeState state) {
+        Card mine = state.heldCard(myIndex);
+        if (mine == null) {
+            return 0;
+        }
+        int alive = 0;
+        double showdown = 1;
+        for (int p = 0; p < state.numPlayers(); p++) {
+            Card other = state.heldCard(p);
+            if (other != null) {
+                alive++;
+                if (p != myIndex) {
+                    showdown *= mine.value() > other.value() ? 1 : mine.value() == other.value() ? 0.5 : 0;
+                }
+            }
+        }
+        double progress = 1 - state.deckSize() / 16.0;
+        return progress * showdown + (1 - progress) / alive;
+    }
+
+    /**
+     * helper method to get a scratch NodeState holding a copy of a NodeState
+     * @param level the index of the scratch NodeState
+     * @param state the NodeState to be copied
+     * @return the scratch NodeState
+     * **/
+    private NodeState scratch(int level, NodeState state) {
+        if (stack[level] == null) {
+            stack[level] = new NodeState(state);
+        } else {
+            stack[level].copyFrom(state);
+        }
+        return stack[level];
+    }
+
+    /**
+     * Hashes what the agent knows when choosing a move, to seed the determinizations
+     * @param c the card drawn from the deck
+     * @return a hash of the public state and the agent's cards
+     * **/
+    private long informationKey(Card c) {
+        long hash = c.ordinal();
+        for (int p = 0; p < current.numPlayers(); p++) {
+            Card known = current.eliminated(p) ? null : current.getCard(p);
+            hash = hash * 31 + (known == null ? 9 : known.ordinal());
+            hash = hash * 31 + current.score(p) + (current.handmaid(p) ? 16 : 0);
+            java.util.Iterator<Card> discards = current.getDiscards(p);
+            while (discards.hasNext()) {
+                hash = hash * 31 + discards.next().ordinal();
+            }
+            hash = hash * 31 + 17;
+        }
+        return hash * 31 + current.deckSize();
+    }
+}
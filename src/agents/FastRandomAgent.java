@@ -0,0 +1,116 @@
+package agents;
+import loveletter.*;
+import java.util.Random;
+
+/**
+ * The Random Agent as a FastAgent, for bulk simulation.
+ * It draws from the same distribution of moves as the RandomAgent, reading the packed state
+ * and answering with an action code, so it creates no objects for each move.
+ * All agent's must have a 0 parameter constructor
+ * */
+public class FastRandomAgent extends FastAgentAdapter{
+
+  private static final int GUARD = 0, HANDMAID = 3, PRINCE = 4, KING = 5, COUNTESS = 6, PRINCESS = 7;//card ordinals
+  private Random rand;
+  private final int[] targets = new int[4];//scratch array of the legal targets of a card
+
+  //0 place default constructor
+  public FastRandomAgent(){
+    rand  = new Random();
+  }
+
+  /**
+   * Reports the agents name
+   * */
+  public String toString(){return "Fast Random";}
+
+  /**
+   * Method called at the start of a round
+   * @param start the packed initial state of the round
+   **/
+  public void newRound(long start){}
+
+  /**
+   * Method called when any agent performs an action.
+   * @param player the player who performed the action
+   * @param action the action code of the action
+   * @param results the packed state of play the agent is able to observe.
+   * **/
+  public void see(int player, int action, long results){}
+
+  /**
+   * Perform an action after drawing a card from the deck, see RandomAgent.playCard
+   * @param current the packed state of play the agent is able to observe
+   * @param drawn the ordinal of the card drawn from the deck
+   * @return the action code of the action the agent chooses to perform
+   * */
+  public int playCard(long current, int drawn){
+    int me = PackedState.observer(current);
+    int inHand = PackedState.card(current, me);
+    int drawnChoices = choices(current, me, drawn, inHand);
+    int total = drawnChoices + choices(current, me, inHand, drawn);
+    if(total==0) return ActionCode.NONE;
+    int choice = rand.nextInt(total);
+    int play = drawn;
+    if(choice>=drawnChoices){
+      play = inHand;
+      choice -= drawnChoices;
+    }
+    legalTargets(current, me, play);
+    switch(play){
+      case GUARD:
+        return ActionCode.code(play, targets[choice], rand.nextInt(7)+1);
+      case HANDMAID:
+      case COUNTESS:
+        return ActionCode.code(play, -1, -1);
+      case PRINCESS:
+        return ActionCode.NONE;//never play princess
+      default:
+        return ActionCode.code(play, targets[choice], -1);
+    }
+  }
+
+  /**
+   * Counts the legal ways of playing a card
+   * @param current the packed state
+   * @param me the index of the agent
+   * @param play the ordinal of the card to be played
+   * @param other the ordinal of the card kept
+   * @return the number of legal targets, or the number of players for a card without a target
+   * */
+  private int choices(long current, int me, int play, int other){
+    switch(play){
+      case PRINCESS:
+        return 0;//never play princess
+      case HANDMAID:
+      case COUNTESS:
+        return PackedState.numPlayers(current);
+      case PRINCE:
+      case KING:
+        if(other==COUNTESS) return 0;//must play the countess
+        return legalTargets(current, me, play);
+      default:
+        return legalTargets(current, me, play);
+    }
+  }
+
+  /**
+   * Fills the targets array with the players a card can legally target
+   * @param current the packed state
+   * @param me the index of the agent
+   * @param play the ordinal of the card to be played
+   * @return the number of legal targets
+   * */
+  private int legalTargets(long current, int me, int play){
+    boolean allHandmaid = PackedState.allHandmaid(current, me);
+    int count = 0;
+    for(int i = 0; i<PackedState.numPlayers(current); i++){
+      if(i==me){
+        if(play==PRINCE) targets[count++] = i;//a player can always target themselves with the prince
+      }
+      else if(!PackedState.eliminated(current, i) && (!PackedState.handmaid(current, i) || (allHandmaid && play!=PRINCE)))
+        targets[count++] = i;
+    }
+    return count;
+  }
+}
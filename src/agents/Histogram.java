@@ -0,0 +1,83 @@
+package agents;
+
+/**
+ * A cheap histogram of non-negative long values with power of two buckets.
+ * Recording a value is a few array operations, so it can be used inside the search loop.
+ * It is not synchronized: a reader on another thread may see a slightly stale snapshot.
+ * */
+public class Histogram {
+    private final long[] buckets = new long[64]; // bucket i counts values with i significant bits
+    private long count; // number of values recorded
+    private long sum; // sum of the values recorded
+    private long max; // largest value recorded
+
+    /**
+     * Records a value, negative values are recorded as 0
+     * @param value the value to be recorded
+     * **/
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[64 - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all the values of another histogram to this one
+     * @param other the histogram to be merged
+     * **/
+    public void merge(Histogram other) {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] += other.buckets[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * returns the number of values recorded
+     * @return the number of values recorded
+     * **/
+    public long count() {
+        return count;
+    }
+
+    /**
+     * returns the largest value recorded
+     * @return the largest value recorded, or 0 if there are none
+     * **/
+    public long max() {
+        return max;
+    }
+
+    /**
+     * returns the mean of the values recorded
+     * @return the mean of the values recorded, or 0 if there are none
+     * **/
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket which contains it
+     * @param percentile the percentile between 0 and 100
+     * @return an upper bound of the percentile, or 0 if there are no values
+     * **/
+    public long percentile(double percentile) {
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank && seen > 0) {
+                return i == 0 ? 0 : Math.min(max, (1L << i) - 1);
+            }
+        }
+        return max;
+    }
+}
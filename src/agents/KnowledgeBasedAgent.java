@@ -1,21 +1,49 @@
 package agents;
 import loveletter.*;
-import java.util.Arrays;
 import java.util.Random;
+import java.util.function.IntUnaryOperator;
 
 /**
  * An interface for representing an agent in the game Love Letter
  * All agent's must have a 0 parameter constructor
  * */
-public class KnowledgeBasedAgent implements Agent {
+public class KnowledgeBasedAgent implements ObservingAgent {
 
     private Random rand;
     private State current;
     private int myIndex;
+    private BeliefTracker beliefs; // the distribution over each opponent's card
+    private IntUnaryOperator decisions; // the action code of each decision key
+    private final int[] targets = new int[4]; // scratch array of the players that can be targeted
 
     //0 place default constructor
     public KnowledgeBasedAgent() {
         rand = new Random();
+        beliefs = new BeliefTracker();
+        decisions = DecisionTable.defaultTable()::code;
+    }
+
+    /**
+     * Constructs an agent with tuned parameters, which decides each move with the policy
+     * rather than compiling a table, as used by the KnowledgeBasedTuner
+     * @param params the priorities and thresholds of the rules
+     * @param seed the seed of the agent's random target choices
+     * **/
+    public KnowledgeBasedAgent(KnowledgeBasedParams params, long seed) {
+        rand = new Random(seed);
+        beliefs = new BeliefTracker();
+        decisions = new KnowledgeBasedPolicy(params)::decide;
+    }
+
+    /**
+     * Constructs an agent which plays the decisions of a table, such as one distilled
+     * from the moves of another agent by the PolicyDistiller
+     * @param table the action code of each decision key
+     * **/
+    public KnowledgeBasedAgent(DecisionTable table) {
+        rand = new Random();
+        beliefs = new BeliefTracker();
+        decisions = table::code;
     }
 
     /**
@@ -30,6 +58,7 @@ public class KnowledgeBasedAgent implements Agent {
     public void newRound(State start) {
         current = start;
         myIndex = current.getPlayerIndex();
+        beliefs.newRound(start);
     }
 
     /**
@@ -39,312 +68,156 @@ public class KnowledgeBasedAgent implements Agent {
      * **/
     public void see(Action act, State results) {
         current = results;
+        beliefs.see(act, results);
     }
 
     /**
-     * Perform an action after drawing a card from the deck
-     * @param c the card drawn from the deck
-     * @return the action the agent chooses to perform
-     * */
-    public Action playCard(Card c) {
-        Action act = null;
-        int target = -1; // target player
-        // int noTarget = -1; // stores the player which should not be targeted
-        Card guess = null; // for Guard action
-        Card inHand = current.getCard(myIndex); // the current card
-
-        // if we know someone's card, store it for later use
-        for(int i=0; i<current.numPlayers(); i++) {
-            if(i != myIndex && !current.eliminated(i) && !current.handmaid(i) && current.getCard(i) != null) {
-                target = i;
-                guess = current.getCard(i);
-                break;
-            }
-        }
-
-        act = playCompulsoryCard(c, inHand);
-        if(act != null) {
-            return act;
-        }
-        act = playGuardCard(c, inHand, guess, target);
-        if(act != null) {
-            return act;
-        }
-        act = playPriestCard(c, inHand);
-        if(act != null) {
-            return act;
-        }
-        act = playBaronCard(c, inHand, guess, target);
-        if(act != null) {
-            return act;
-        }
-        act = playHandmaidCard(c, inHand);
-        if(act != null) {
-            return act;
-        }
-        act = playPrinceCard(c, inHand, guess, target);
-        if(act != null) {
-            return act;
-        }
-        act = playKingCard(c, inHand);
-        if(act != null) {
-            return act;
-        }
-        act = playCountessCard(c, inHand);
-        if(act != null) {
-            return act;
-        }
-        // do nothing for the Princess
-        return act;
-    }
-
-    /**
-     * Perform Guard action
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand
-     * @param guess the known card of a player
-     * @param target the player whose card we know
-     * @return the action the agent chooses to perform
-     * */
-    public Action playGuardCard(Card c, Card inHand, Card guess, int target) {
-        Action act = null;
-        if(inHand == Card.GUARD || c == Card.GUARD) { // if we have a guard
-            if(guess != null && guess != Card.GUARD) { // if we know their non-Guard card
-                try {
-                    act = Action.playGuard(myIndex, target, guess);
-                } catch(IllegalActionException e) {}
-            } else {
-                // choose the player with highest score and the card with higher chances of them having it
-                int[] remainingCards = new int[] {0, 0, 0, 0, 0, 0, 0, 0};
-                remainingCards = getUnseenCards(inHand);
-                target = getHighScorePlayer();
-                int maxCard = max(remainingCards);
-                try {
-                    act = Action.playGuard(myIndex, target, Card.values()[maxCard]);
-                } catch(IllegalActionException e) {}
-            }
-        }
-        return act;
+     * Method called instead of see by the game engine, with the effects of the action
+     * @param obs what the agent observed of the action
+     * @param results the state of play the agent is able to observe.
+     * **/
+    public void observe(Observation obs, State results) {
+        current = results;
+        beliefs.observe(obs, results);
     }
 
     /**
-     * Perform Priest action
+     * Perform an action after drawing a card from the deck.
+     * The decision is looked up in the compiled table of the agent's rules, see KnowledgeBasedPolicy,
+     * and if the table has no action for it, the first legal action is played.
      * @param c the card drawn from the deck
-     * @param inHand the card already in hand
      * @return the action the agent chooses to perform
      * */
-    public Action playPriestCard(Card c, Card inHand) {
+    public Action playCard(Card c) {
+        Card inHand = current.getCard(myIndex); // the current card
+        int code = decisions.applyAsInt(decisionKey(c, inHand));
         Action act = null;
-        if(inHand == Card.PRIEST || c == Card.PRIEST) {
-            // choose the player with the highest score
-            int target = getHighScorePlayer();
-            try {
-                act = Action.playPriest(myIndex, target);
-            } catch(IllegalActionException e) {}
+        if(DecisionTable.isValid(code)) {
+            Card play = DecisionTable.playsDrawn(code) ? c : inHand;
+            act = DecisionTable.isRandom(code) ? playRandom(c, play, -1)
+                : DecisionTable.action(code, myIndex, current.numPlayers(), inHand, c);
         }
-        return act;
+        return act != null ? act : firstLegalAction(c, inHand);
     }
 
     /**
-     * Perform Baron action
+     * Finds the first legal action, playing the drawn card before the held one and the Princess last,
+     * each to the first legal target and guess
      * @param c the card drawn from the deck
      * @param inHand the card already in hand
-     * @param guess the known card of a player
-     * @param target the player whose card we know
-     * @return the action the agent chooses to perform
+     * @return the first legal action
      * */
-    public Action playBaronCard(Card c, Card inHand, Card guess, int target) {
-        Action act = null;
-        if(inHand == Card.BARON || c == Card.BARON) {
-            if(guess != null) { // if we know a card
-                if(inHand == Card.BARON && guess.value() < c.value()) { // if known card has smaller value than our card
-                    try {
-                        act = Action.playBaron(myIndex, target);
-                    } catch(IllegalActionException e) {}
-                } else if(c == Card.BARON && guess.value() < inHand.value()) {
+    private Action firstLegalAction(Card c, Card inHand) {
+        Card[] plays = c == Card.PRINCESS ? new Card[] {inHand, c} : new Card[] {c, inHand};
+        for(Card play : plays) {
+            for(int t=0; t<current.numPlayers(); t++) {
+                for(int g=1; g<8; g++) {
                     try {
-                        act = Action.playBaron(myIndex, target);
-                    } catch(IllegalActionException e) {}
-                } else { // the known card has higher value
-                    if(playersLeft() == 2) { // one other player, therefore play the other card if possible
-                        act = playGuardCard(c, inHand, guess, target);
-                        if(act != null) {
-                            return act;
-                        }
-                        act = playPriestCard(c, inHand);
-                        if(act != null) {
-                            return act;
-                        }
-                        act = playHandmaidCard(c, inHand);
-                        if(act != null) {
-                            return act;
-                        }
-                        act = playPrinceCard(c, inHand, guess, target);
-                        if(act != null) {
-                            return act;
-                        }
-                        act = playKingCard(c, inHand);
-                        if(act != null) {
-                            return act;
+                        Action act;
+                        switch(play) {
+                        case GUARD: act = Action.playGuard(myIndex, t, Card.values()[g]); break;
+                        case PRIEST: act = Action.playPriest(myIndex, t); break;
+                        case BARON: act = Action.playBaron(myIndex, t); break;
+                        case HANDMAID: act = Action.playHandmaid(myIndex); break;
+                        case PRINCE: act = Action.playPrince(myIndex, t); break;
+                        case KING: act = Action.playKing(myIndex, t); break;
+                        case COUNTESS: act = Action.playCountess(myIndex); break;
+                        default: act = Action.playPrincess(myIndex);
                         }
-                        act = playCountessCard(c, inHand);
-                        if(act != null) {
+                        if(current.legalAction(act, c)) {
                             return act;
                         }
-                        // else we lose the round either way as the other card must be Princess or Baron
-                    }
-                    act = playRandom(c, Card.values()[2], -1);
+                    } catch(IllegalActionException e) {/*not an action, try the next*/}
                 }
-            } else {
-                act = playRandom(c, Card.values()[2], -1);
             }
         }
-        return act;
+        throw new IllegalStateException("No legal action with the " + c + " and the " + inHand); // unreachable, the Princess is always legal
     }
 
     /**
-     * Perform Handmaid action
+     * Packs the inputs of the agent's decision into a DecisionTable key
      * @param c the card drawn from the deck
      * @param inHand the card already in hand
-     * @return the action the agent chooses to perform
+     * @return the key of the decision
      * */
-    public Action playHandmaidCard(Card c, Card inHand) {
-        Action act = null;
-        if(inHand == Card.HANDMAID || c == Card.HANDMAID) {
-            try {
-                act = Action.playHandmaid(myIndex);
-            } catch(IllegalActionException e) {}
+    int decisionKey(Card c, Card inHand) {
+        int num = current.numPlayers();
+        int knownSeat = 0; // the seat of the player whose card we know
+        Card guess = null; // the known card of a player
+        // if we know someone's card, store it for later use
+        for(int i=0; i<num; i++) {
+            if(i != myIndex && !current.eliminated(i) && !current.handmaid(i) && current.getCard(i) != null) {
+                knownSeat = seat(i);
+                guess = current.getCard(i);
+                break;
+            }
         }
-        return act;
-    }
-
-    /**
-     * Perform Prince action
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand
-     * @param guess the known card of a player
-     * @param target the player whose card we know
-     * @return the action the agent chooses to perform
-     * */
-    public Action playPrinceCard(Card c, Card inHand, Card guess, int target) {
-        Action act = null;
-        if(inHand == Card.PRINCE || c == Card.PRINCE) {
-            if(guess != null && guess == Card.PRINCESS) { // if we know that a player has a princess
-                try {
-                    act = Action.playPrince(myIndex, target); // we can eliminate them
-                } catch(IllegalActionException e) {}
-            } else {
-                if(inHand == Card.PRINCESS || c == Card.PRINCESS) { // if we also have a Princess
-                    act = playRandom(c, Card.values()[4], myIndex); // don't target ourselves
-                } else {
-                    act = playRandom(c, Card.values()[4], -1);
+        int leader = getHighScorePlayer();
+        Card leaderGuess = leader == -1 ? null : beliefs.mostLikely(leader);
+        int alive = 0;
+        int handmaid = 0;
+        for(int i=0; i<num; i++) {
+            if(i != myIndex) {
+                if(!current.eliminated(i)) {
+                    alive |= 1 << (seat(i) - 1);
+                }
+                if(current.handmaid(i)) {
+                    handmaid |= 1 << (seat(i) - 1);
                 }
             }
         }
-        return act;
-    }
-
-    /**
-     * Perform King action
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand
-     * @return the action the agent chooses to perform
-     * */
-    public Action playKingCard(Card c, Card inHand) {
-        Action act = null;
-        if(inHand == Card.KING || c == Card.KING) {
-            act = playRandom(c, Card.values()[5], -1);
-        }
-        return act;
+        return DecisionTable.key(inHand, c, knownSeat, guess, leader == -1 ? 0 : seat(leader), leaderGuess, alive, handmaid);
     }
 
     /**
-     * Perform Countess action
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand
-     * @return the action the agent chooses to perform
+     * helper method to get the seat of a player relative to the agent
+     * @param player the index of the player
+     * @return the seat of the player, 1 for the next player
      * */
-    public Action playCountessCard(Card c, Card inHand) {
-        Action act = null;
-        if(inHand == Card.COUNTESS || c == Card.COUNTESS) {
-            // if the programs gets to this statement, we have to play Countess as the other card must be Princess
-            try {
-                act = Action.playCountess(myIndex);
-            } catch(IllegalActionException e) {}
-        }
-        return act;
+    private int seat(int player) {
+        return (player - myIndex + current.numPlayers()) % current.numPlayers();
     }
 
     /**
-     * Perform a compulsory action
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand
-     * @return the compulsory action the agent chooses to perform
-     * */
-    public Action playCompulsoryCard(Card c, Card inHand) {
-        Action act = null;
-        // If we have Prince or King and Countess, we must play Countess
-        if((inHand == Card.PRINCE || inHand == Card.KING) && c == Card.COUNTESS) {
-            try {
-                act = Action.playCountess(myIndex);
-            } catch(IllegalActionException e) {}
-        }
-        else if((c == Card.PRINCE || c == Card.KING) && inHand == Card.COUNTESS) {
-            try {
-                act = Action.playCountess(myIndex);
-            } catch(IllegalActionException e) {}
-        }
-        return act;
-    }
-
-    /**
-     * Makes careful random target choices
+     * Makes careful random target choices, drawing the target uniformly from the players
+     * that can legally be targeted: those still in the round and not protected by the Handmaid,
+     * or any player still in the round if all of them are protected.
+     * A Prince targets ourself when all the other players are protected by the Handmaid.
      * @param c the card drawn from the deck
      * @param play the card that will be played
-     * @param noTarget the player that must not be selected
-     * @return the action the agent chooses to perform
-     * @throws IllegalActionException when the Action produced is not legal.
+     * @param noTarget the player that must not be selected, or -1
+     * @return the action the agent chooses to perform, or null if there is no legal target
      * */
     public Action playRandom(Card c, Card play, int noTarget) {
-        Action act = null;
-        while(!current.legalAction(act, c)) {
-            int target = rand.nextInt(current.numPlayers());
-            // choose a new target if current target is eliminated or protected by handmaid
-            while(current.eliminated(target) || current.handmaid(target) || target == myIndex) {
-                target = rand.nextInt(current.numPlayers());
-                // if all other players are protected by handmaid, then choose a target that is not elimitated
-                if(current.allHandmaid(myIndex) && !current.eliminated(target) && target != myIndex) {
-                    break;
-                }
-            }
-            if(noTarget != -1) { // we can't choose noTarget
-                target = noTarget;
-                while(current.handmaid(target) || target == noTarget) { // hence choose another player
-                    target = rand.nextInt(current.numPlayers());
-                }
+        boolean allHandmaid = current.allHandmaid(myIndex);
+        int count = 0;
+        for(int i=0; i<current.numPlayers(); i++) {
+            if(i != myIndex && i != noTarget && !current.eliminated(i) && (allHandmaid || !current.handmaid(i))) {
+                targets[count++] = i;
             }
-            // if current card is Prince and all other players are protected by Handmaid
-            if(play == Card.PRINCE && current.allHandmaid(myIndex)) {
-                target = myIndex; // we must choose ourself
+        }
+        int target;
+        if(play == Card.PRINCE && allHandmaid) {
+            target = myIndex; // we must choose ourself
+        } else if(count > 0) {
+            target = targets[rand.nextInt(count)];
+        } else {
+            return null;
+        }
+        try {
+            switch(play) {
+            case BARON:
+                return Action.playBaron(myIndex, target);
+            case PRINCE:
+                return Action.playPrince(myIndex, target);
+            case KING:
+                return Action.playKing(myIndex, target);
+            default:
+                return null; // never play Princess
             }
-
-            try {
-                switch(play) {
-                case BARON:  
-                    act = Action.playBaron(myIndex, target);
-                    break;
-                case PRINCE:
-                    act = Action.playPrince(myIndex, target);
-                    break;
-                case KING:
-                    act = Action.playKing(myIndex, target);
-                    break;
-                default:
-                    act = null; // never play Princess
-                }
-            } catch(IllegalActionException e) {/*do nothing, just try again*/}  
+        } catch(IllegalActionException e) {
+            return null;
         }
-        return act;
     }
 
     /**
@@ -354,90 +227,31 @@ public class KnowledgeBasedAgent implements Agent {
      * @return array containing the cards that have not been played
      * */
     public int[] getUnseenCards(Card inHand) {
-        Card[] unseenCards = current.unseenCards();
-        int[] remainingCards = new int[] {0, 0, 0, 0, 0, 0, 0, 0};
-        
-        for(Card unseen : unseenCards) {
-            if(unseen == Card.GUARD) {
-                remainingCards[0]++;
-            } else if(unseen == Card.PRIEST) {
-                remainingCards[1]++;
-            } else if(unseen == Card.BARON) {
-                remainingCards[2]++;
-            } else if(unseen == Card.HANDMAID) {
-                remainingCards[3]++;
-            } else if(unseen == Card.PRINCE) {
-                remainingCards[4]++;
-            } else if(unseen == Card.KING) {
-                remainingCards[5]++;
-            } else if(unseen == Card.COUNTESS) {
-                remainingCards[6]++;
-            } else { // must be PRINCESS
-                remainingCards[7]++;
-            }
+        int[] remainingCards = new int[8];
+        for(Card card : Card.values()) {
+            remainingCards[card.ordinal()] = current.unseenCount(card);
         }
         // subtract our inHand card
-        remainingCards[inHand.value()-1]--;
+        remainingCards[inHand.ordinal()]--;
 
         return remainingCards;
     }
 
-    /**
-     * Finds the index of maximum from an array
-     * @param a the array for which to find the index of maximum
-     * @return index of maximum integer
-     * */
-    public int max(int[] a) {
-        int max = -1;
-		int index = -1;
-
-        // we start from i=1 as we want a non-Guard card
-		for (int i = 1; i < a.length; i++) {
-			if (max < a[i]) {
-				max = a[i];
-				index = i;
-			}
-        }
-        return index;
-    }
-
     /**
      * Finds the player (that is still in the round) with the highest score
      * @return index of the player with the highest score
      * */
     public int getHighScorePlayer() {
         int index = -1;
-        int num = current.numPlayers();
-        int[][] scores = new int[num][2]; // 1st column = player index, 2nd column = score
-
-        for(int i=0; i<num; i++) {
-            scores[i][0] = i;
-            scores[i][1] = current.score(i);
-        }
-
-        // sort the 2D array
-        Arrays.sort(scores, new java.util.Comparator<int[]>() {
-            public int compare(int[] a, int[] b) {
-                return Integer.compare(b[1], a[1]);
-            }
-        });
-
-        for(int i=0; i<num; i++) {
-            // check if the player is not protected by Handmaid and they're still in the round
-            if(scores[i][0] != myIndex && !current.handmaid(scores[i][0]) && !current.eliminated(scores[i][0])) {
-                index = scores[i][0];
-                break;
-            }
-        }
-        if(current.allHandmaid(myIndex)) { // if all other players are protected by Handmaid
-            for(int i=0; i<num; i++) {
-                if(scores[i][0] != myIndex && !current.eliminated(scores[i][0])) {
-                    index = scores[i][0]; // choose the highest score player that is not eliminated
-                    break;
-                }
+        boolean allHandmaid = current.allHandmaid(myIndex); // if all other players are protected by Handmaid
+        for(int i=0; i<current.numPlayers(); i++) {
+            // check the player is still in the round, and not protected by Handmaid unless everyone is,
+            // keeping the first of the highest score
+            if(i != myIndex && !current.eliminated(i) && (allHandmaid || !current.handmaid(i))
+                && (index == -1 || current.score(i) > current.score(index))) {
+                index = i;
             }
         }
-
         return index;
     }
 
@@ -0,0 +1,126 @@
+package agents;
+import loveletter.*;
+import java.util.Arrays;
+
+/**
+ * The tunable parameters of the Knowledge Based Agent, as a vector of doubles.
+ * The defaults reproduce the agent's original hand-written rules:
+ * the first eight entries are the priority of each card (the card of the higher priority
+ * is considered first), then the Baron margin and the lowest values of the other card
+ * for which the Baron and the Prince are played on a random target.
+ * Parameters are immutable, so they can be shared between threads.
+ * */
+public class KnowledgeBasedParams {
+    /** index of the margin a known card must be below our other card by to play the Baron on it **/
+    public static final int BARON_MARGIN = 8;
+    /** index of the lowest value of the other card for which the Baron is played on a random target **/
+    public static final int BARON_BLIND = 9;
+    /** index of the lowest value of the other card for which the Prince is played on a random target **/
+    public static final int PRINCE_BLIND = 10;
+    /** the number of parameters **/
+    public static final int SIZE = 11;
+
+    private static final String[] NAMES = {
+        "guardPriority", "priestPriority", "baronPriority", "handmaidPriority",
+        "princePriority", "kingPriority", "countessPriority", "princessPriority",
+        "baronMargin", "baronBlind", "princeBlind"
+    };
+    private static final double[] DEFAULTS = {7, 6, 5, 4, 3, 2, 1, 0, 0, 0, 0};
+    private static final double[] LOWER = {0, 0, 0, 0, 0, 0, 0, 0, -2, 0, 0};
+    private static final double[] UPPER = {8, 8, 8, 8, 8, 8, 8, 8, 4, 9, 9};
+
+    private final double[] values;
+
+    /**
+     * Constructs parameters from a vector, clamped to the bounds of each parameter
+     * @param values the parameter vector, of length SIZE
+     * **/
+    public KnowledgeBasedParams(double[] values) {
+        if (values.length != SIZE) {
+            throw new IllegalArgumentException("Expected " + SIZE + " parameters, got " + values.length);
+        }
+        this.values = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            this.values[i] = Math.max(LOWER[i], Math.min(UPPER[i], values[i]));
+        }
+    }
+
+    /**
+     * returns the parameters of the original hand-written rules
+     * @return the default parameters
+     * **/
+    public static KnowledgeBasedParams defaults() {
+        return new KnowledgeBasedParams(DEFAULTS);
+    }
+
+    /**
+     * Parses parameters written by toString
+     * @param text the parameters as name=value pairs separated by commas, missing names take their default
+     * @return the parameters
+     * @throws IllegalArgumentException if a name is unknown or a value is not a number
+     * **/
+    public static KnowledgeBasedParams parse(String text) {
+        double[] values = DEFAULTS.clone();
+        for (String pair : text.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            String[] parts = pair.split("=");
+            int i = Arrays.asList(NAMES).indexOf(parts[0].trim());
+            if (i < 0 || parts.length != 2) {
+                throw new IllegalArgumentException("Unknown parameter: " + pair);
+            }
+            values[i] = Double.parseDouble(parts[1].trim());
+        }
+        return new KnowledgeBasedParams(values);
+    }
+
+    /**
+     * returns a copy of the parameter vector
+     * @return the parameter vector
+     * **/
+    public double[] toArray() {
+        return values.clone();
+    }
+
+    /**
+     * returns the size of the range of a parameter, for scaling the steps of a search
+     * @param i the index of the parameter
+     * @return the upper bound minus the lower bound
+     * **/
+    public static double range(int i) {
+        return UPPER[i] - LOWER[i];
+    }
+
+    /**
+     * returns the priority of a card
+     * @param card the card
+     * @return the priority, higher is considered first
+     * **/
+    public double priority(Card card) {
+        return values[card.ordinal()];
+    }
+
+    /** @return the margin a known card must be below our other card by to play the Baron on it **/
+    public double baronMargin() {return values[BARON_MARGIN];}
+
+    /** @return the lowest value of the other card for which the Baron is played on a random target **/
+    public double baronBlind() {return values[BARON_BLIND];}
+
+    /** @return the lowest value of the other card for which the Prince is played on a random target **/
+    public double princeBlind() {return values[PRINCE_BLIND];}
+
+    /**
+     * Writes the parameters as name=value pairs, which can be read by parse
+     * **/
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SIZE; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(NAMES[i]).append('=').append(Math.round(values[i] * 1000) / 1000.0);
+        }
+        return text.toString();
+    }
+}
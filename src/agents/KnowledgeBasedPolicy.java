@@ -0,0 +1,201 @@
+package agents;
+import loveletter.*;
+
+/**
+ * The rules of the Knowledge Based Agent as a pure function of the decision inputs packed in
+ * a DecisionTable key, so they can be compiled into a table by DecisionTableCompiler.
+ * The order the cards are considered in and the thresholds of the rules come from
+ * KnowledgeBasedParams, whose defaults are the agent's original rules.
+ * Seats are relative to the player, and the targets the agent picks at random are left to
+ * the agent, which knows the players that can legally be targeted.
+ * A policy keeps the inputs of the key being decided, so each thread should use its own instance.
+ * */
+class KnowledgeBasedPolicy {
+
+    private final KnowledgeBasedParams params; // the priorities and thresholds of the rules
+    private Card inHand; // the card already in hand
+    private Card c; // the card drawn from the deck
+    private int knownSeat; // the seat of the player whose card we know, 0 if none
+    private Card guess; // the known card of a player
+    private int leader; // the seat of the player with the highest score, 0 if none
+    private Card leaderGuess; // the card the leader most likely holds
+    private int alive; // mask of the seats still in the round
+
+    /**
+     * Constructs the policy of the original rules
+     * **/
+    KnowledgeBasedPolicy() {
+        this(KnowledgeBasedParams.defaults());
+    }
+
+    /**
+     * Constructs a policy with tuned parameters
+     * @param params the priorities and thresholds of the rules
+     * **/
+    KnowledgeBasedPolicy(KnowledgeBasedParams params) {
+        this.params = params;
+    }
+
+    /**
+     * Decides the action for the inputs of a key
+     * @param key the packed decision inputs
+     * @return the action code of the chosen action, or 0 if there is none
+     * **/
+    int decide(int key) {
+        inHand = DecisionTable.held(key);
+        c = DecisionTable.drawn(key);
+        knownSeat = DecisionTable.knownSeat(key);
+        guess = DecisionTable.knownCard(key);
+        leader = DecisionTable.leaderSeat(key);
+        leaderGuess = DecisionTable.leaderGuess(key);
+        alive = DecisionTable.aliveMask(key);
+
+        int act = playCompulsoryCard();
+        if(act != 0) {
+            return act;
+        }
+        // consider the card of higher priority first
+        Card first = inHand;
+        Card second = c;
+        if(params.priority(c) > params.priority(inHand)) {
+            first = c;
+            second = inHand;
+        }
+        act = playCard(first, second, false);
+        if(act == 0) {
+            act = playCard(second, first, false);
+        }
+        // if the thresholds ruled out both cards, play one of them anyway
+        if(act == 0) {
+            act = playCard(first, second, true);
+        }
+        if(act == 0) {
+            act = playCard(second, first, true);
+        }
+        return act;
+    }
+
+    /**
+     * Perform the action of one of the two cards
+     * @param card the card to be played
+     * @param other the other card, which is kept
+     * @param force true to ignore the thresholds for random targets
+     * @return the action code, or 0 if the rules do not play the card
+     * */
+    private int playCard(Card card, Card other, boolean force) {
+        switch(card) {
+            case GUARD:
+                return playGuardCard();
+            case PRIEST:
+                return playPriestCard();
+            case BARON:
+                return playBaronCard(other, force);
+            case HANDMAID:
+                return play(Card.HANDMAID, 0, false, null);
+            case PRINCE:
+                return playPrinceCard(other, force);
+            case KING:
+                return play(Card.KING, 0, true, null);
+            case COUNTESS:
+                // if the programs gets to this statement, we have to play Countess as the other card must be Princess
+                return play(Card.COUNTESS, 0, false, null);
+            default:
+                return 0; // do nothing for the Princess
+        }
+    }
+
+    /**
+     * Perform Guard action
+     * @return the action code, or 0 if there is no target
+     * */
+    private int playGuardCard() {
+        if(guess != null && guess != Card.GUARD) { // if we know their non-Guard card
+            return play(Card.GUARD, knownSeat, false, guess);
+        } else if(leader != 0) {
+            // choose the player with highest score and the card they most likely hold
+            return play(Card.GUARD, leader, false, leaderGuess);
+        }
+        return 0;
+    }
+
+    /**
+     * Perform Priest action
+     * @return the action code, or 0 if there is no target
+     * */
+    private int playPriestCard() {
+        if(leader != 0) {
+            // choose the player with the highest score
+            return play(Card.PRIEST, leader, false, null);
+        }
+        return 0;
+    }
+
+    /**
+     * Perform Baron action
+     * @param other the card kept
+     * @param force true to play on a random target whatever the other card
+     * @return the action code, or 0 if the Baron is not played
+     * */
+    private int playBaronCard(Card other, boolean force) {
+        if(guess != null) { // if we know a card
+            if(guess.value() + params.baronMargin() < other.value()) { // if known card has smaller value than our card
+                return play(Card.BARON, knownSeat, false, null);
+            } else if(Integer.bitCount(alive) == 1 && other != Card.BARON) {
+                // one other player, therefore play the other card if possible
+                int act = playCard(other, Card.BARON, force);
+                if(act != 0) {
+                    return act;
+                }
+                // else we lose the round either way as the other card must be Princess or Baron
+            }
+        }
+        if(force || other.value() >= params.baronBlind()) {
+            return play(Card.BARON, 0, true, null);
+        }
+        return 0;
+    }
+
+    /**
+     * Perform Prince action. A random target is never ourself unless all the other players
+     * are protected by the Handmaid, so holding the Princess needs no special case.
+     * @param other the card kept
+     * @param force true to play on a random target whatever the other card
+     * @return the action code, or 0 if the Prince is not played
+     * */
+    private int playPrinceCard(Card other, boolean force) {
+        if(guess == Card.PRINCESS) { // if we know that a player has a princess
+            return play(Card.PRINCE, knownSeat, false, null); // we can eliminate them
+        }
+        if(force || other.value() >= params.princeBlind()) {
+            return play(Card.PRINCE, 0, true, null);
+        }
+        return 0;
+    }
+
+    /**
+     * Perform a compulsory action
+     * @return the action code, or 0 if there is no compulsory action
+     * */
+    private int playCompulsoryCard() {
+        // If we have Prince or King and Countess, we must play Countess
+        if((inHand == Card.PRINCE || inHand == Card.KING) && c == Card.COUNTESS) {
+            return play(Card.COUNTESS, 0, false, null);
+        }
+        else if((c == Card.PRINCE || c == Card.KING) && inHand == Card.COUNTESS) {
+            return play(Card.COUNTESS, 0, false, null);
+        }
+        return 0;
+    }
+
+    /**
+     * helper method to encode playing one of the two cards
+     * @param card the card to be played, which is either the card in hand or the card drawn
+     * @param seat the target seat
+     * @param random true if the target is chosen at random
+     * @param guessed the Guard guess, or null
+     * @return the action code
+     * **/
+    private int play(Card card, int seat, boolean random, Card guessed) {
+        return DecisionTable.code(card == c, seat, random, guessed);
+    }
+}
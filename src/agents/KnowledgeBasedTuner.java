@@ -0,0 +1,245 @@
+package agents;
+import loveletter.*;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tunes the KnowledgeBasedParams by self-play on all cores.
+ * Each generation samples candidates around the current mean, and scores each one by its win rate
+ * in 4 player games against three agents playing the mean. All the candidates of a generation play
+ * the same deals from the same seats with the same agent seeds, so their win rates differ by the
+ * parameters rather than the luck of the deal. The weaker half of the candidates is dropped after
+ * each rung of games and the survivors play twice as many (successive halving).
+ * The mean and the per-parameter step sizes are then updated from the best candidates, as a
+ * (mu/mu_w, lambda) evolution strategy with a diagonal rank-mu covariance update,
+ * i.e. separable CMA-ES without the evolution paths.
+ * Run with: java agents.KnowledgeBasedTuner [generations] [population] [games] [threads]
+ * and compile the result with DecisionTableCompiler.
+ * */
+public class KnowledgeBasedTuner {
+    private static final PrintStream NOWHERE = new PrintStream(OutputStream.nullOutputStream());
+    private static final int BLOCK = 16; // games per task
+
+    private final int population; // the candidates sampled each generation
+    private final int parents; // the best candidates the mean is updated from
+    private final int games; // the games each candidate plays in the first rung
+    private final ExecutorService pool;
+    private final Random random;
+    private final double[] weights; // the recombination weight of each parent
+
+    private double[] mean; // the centre of the search
+    private final double[] variance = new double[KnowledgeBasedParams.SIZE]; // the diagonal covariance
+    private double sigma = 0.15; // the step size, as a fraction of each parameter's range
+    private long gamesPlayed;
+
+    /**
+     * Constructs a tuner starting from the default parameters
+     * @param population the number of candidates sampled each generation, at least 4
+     * @param games the number of games each candidate plays in the first rung
+     * @param threads the number of threads playing games
+     * @param seed the seed of the sampling and of the deals
+     * @throws IllegalArgumentException if the population is less than 4 or the games are not positive
+     * **/
+    public KnowledgeBasedTuner(int population, int games, int threads, long seed) {
+        if (population < 4 || games < 1) {
+            throw new IllegalArgumentException("The population must be at least 4 and the games positive");
+        }
+        this.population = population;
+        this.parents = Math.max(2, population / 4);
+        this.games = games;
+        this.pool = Executors.newFixedThreadPool(threads);
+        this.random = new Random(seed);
+        this.mean = KnowledgeBasedParams.defaults().toArray();
+        Arrays.fill(variance, 1.0);
+        weights = new double[parents];
+        double sum = 0;
+        for (int i = 0; i < parents; i++) {
+            weights[i] = Math.log(parents + 0.5) - Math.log(i + 1);
+            sum += weights[i];
+        }
+        for (int i = 0; i < parents; i++) {
+            weights[i] /= sum;
+        }
+    }
+
+    /**
+     * Runs one generation: samples the candidates, races them and updates the mean
+     * @return the win rate of the best candidate in its last rung
+     * @throws InterruptedException if the thread is interrupted while waiting for the games
+     * **/
+    public double generation() throws InterruptedException {
+        int n = KnowledgeBasedParams.SIZE;
+        double[][] steps = new double[population][n];
+        KnowledgeBasedParams[] candidates = new KnowledgeBasedParams[population];
+        for (int k = 0; k < population; k++) {
+            double[] x = new double[n];
+            for (int i = 0; i < n; i++) {
+                steps[k][i] = Math.sqrt(variance[i]) * random.nextGaussian();
+                x[i] = mean[i] + sigma * KnowledgeBasedParams.range(i) * steps[k][i];
+            }
+            candidates[k] = new KnowledgeBasedParams(x);
+        }
+        KnowledgeBasedParams incumbent = new KnowledgeBasedParams(mean);
+        long seed = random.nextLong();
+
+        // successive halving: each rung plays new games, from index played on, as many as all the
+        // previous rungs together, and the survivors keep the wins of their earlier rungs
+        Integer[] alive = new Integer[population];
+        for (int k = 0; k < population; k++) {
+            alive[k] = k;
+        }
+        int[] wins = new int[population];
+        int played = 0;
+        int rungGames = games;
+        int survivors = population;
+        while (true) {
+            int[] rungWins = play(candidates, alive, survivors, incumbent, seed, played, rungGames);
+            for (int j = 0; j < survivors; j++) {
+                wins[alive[j]] += rungWins[j];
+            }
+            played += rungGames;
+            Arrays.sort(alive, 0, survivors, (a, b) -> Integer.compare(wins[b], wins[a]));
+            if (survivors <= parents) {
+                break;
+            }
+            survivors = Math.max(parents, survivors / 2);
+            rungGames = played;
+        }
+
+        // recombine the parents and adapt the step size of each parameter to their spread
+        double learning = Math.min(1.0, 1.0 / n * parents / 2.0);
+        double[] next = new double[n];
+        double[] spread = new double[n];
+        for (int j = 0; j < parents; j++) {
+            double[] x = candidates[alive[j]].toArray();
+            double[] step = steps[alive[j]];
+            for (int i = 0; i < n; i++) {
+                next[i] += weights[j] * x[i];
+                spread[i] += weights[j] * step[i] * step[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            variance[i] = (1 - learning) * variance[i] + learning * spread[i];
+        }
+        mean = new KnowledgeBasedParams(next).toArray();
+        sigma *= 0.98;
+        return (double) wins[alive[0]] / played;
+    }
+
+    /**
+     * Plays a rung of games for each surviving candidate, in parallel blocks of games
+     * @param candidates the parameters of all the candidates
+     * @param alive the indices of the candidates, the survivors first
+     * @param survivors the number of candidates still racing
+     * @param incumbent the parameters of the three opponents
+     * @param seed the seed of the generation's deals
+     * @param first the index of the first game of the rung
+     * @param count the number of games in the rung
+     * @return the wins of each survivor, in the order of alive
+     * @throws InterruptedException if the thread is interrupted while waiting for the games
+     * **/
+    private int[] play(KnowledgeBasedParams[] candidates, Integer[] alive, int survivors,
+                       KnowledgeBasedParams incumbent, long seed, int first, int count) throws InterruptedException {
+        List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+        for (int j = 0; j < survivors; j++) {
+            KnowledgeBasedParams candidate = candidates[alive[j]];
+            for (int g = first; g < first + count; g += BLOCK) {
+                int from = g;
+                int to = Math.min(first + count, g + BLOCK);
+                results.add(pool.submit(() -> {
+                    int wins = 0;
+                    for (int game = from; game < to; game++) {
+                        wins += playGame(candidate, incumbent, seed, game);
+                    }
+                    return wins;
+                }));
+            }
+        }
+        int[] wins = new int[survivors];
+        int blocks = results.size() / survivors;
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                wins[i / blocks] += results.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A tuning game failed", e.getCause());
+        }
+        gamesPlayed += (long) survivors * count;
+        return wins;
+    }
+
+    /**
+     * Plays one game of a candidate against three copies of the incumbent.
+     * The deal, the candidate's seat and the agents' seeds depend only on the game's index.
+     * @param candidate the parameters being evaluated
+     * @param incumbent the parameters of the opponents
+     * @param seed the seed of the generation's deals
+     * @param game the index of the game
+     * @return 1 if the candidate wins the game, 0 otherwise
+     * **/
+    static int playGame(KnowledgeBasedParams candidate, KnowledgeBasedParams incumbent, long seed, int game) {
+        long dealSeed = seed + 0x9E3779B97F4A7C15L * (game + 1);
+        int seat = game % 4;
+        Agent[] agents = new Agent[4];
+        for (int p = 0; p < 4; p++) {
+            agents[p] = new KnowledgeBasedAgent(p == seat ? candidate : incumbent, dealSeed + p);
+        }
+        int[] scores = new LoveLetter(dealSeed, NOWHERE, true).playGame(agents);
+        for (int p = 0; p < 4; p++) {
+            if (scores[p] > scores[seat]) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * returns the current centre of the search
+     * @return the mean parameters
+     * **/
+    public KnowledgeBasedParams mean() {
+        return new KnowledgeBasedParams(mean);
+    }
+
+    /**
+     * Stops the threads playing games
+     * **/
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Tunes the parameters and prints the mean after each generation
+     * @param args generations (default 50), population (16), games in the first rung (64)
+     * and threads (the number of cores)
+     * @throws InterruptedException if interrupted while waiting for the games
+     * **/
+    public static void main(String[] args) throws InterruptedException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int population = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        KnowledgeBasedTuner tuner = new KnowledgeBasedTuner(population, games, threads, System.nanoTime());
+        long start = System.nanoTime();
+        try {
+            for (int g = 1; g <= generations; g++) {
+                double best = tuner.generation();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("generation %d: best win rate %.3f, %.0f games/s%n  %s%n",
+                    g, best, tuner.gamesPlayed / seconds, tuner.mean());
+            }
+        } finally {
+            tuner.shutdown();
+        }
+        System.out.println("Compile with: java agents.DecisionTableCompiler " + DecisionTable.DEFAULT_FILE
+            + " \"" + tuner.mean() + "\"");
+    }
+}
@@ -0,0 +1,126 @@
+package agents;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Estimates a player's chance of winning the round from a NodeState, as the logistic function
+ * of a weighted sum of the ValueFeatures. The weights are learned offline by the ValueTrainer,
+ * and the defaults were trained on 2 million rounds of random self-play from random scores, the same play
+ * as the MCTS playouts, so the value predicts the outcome of a playout without playing it.
+ * Value functions are immutable, so they can be shared between agents and threads.
+ * */
+public class LinearValueFunction {
+    private static final double[] DEFAULT_WEIGHTS = {
+        0.5703, -0.0140, -0.1230, 0.0478, 0.2086, 0.0783,
+        0.1421, 0.3187, -0.0883, -0.4258, -0.0946, -0.0621,
+        -0.0657, -0.1283, -0.0357, -0.0552, -0.2103, 0.4601,
+        -0.0465, -0.3554, -0.2952, -0.3072, -0.3788, -0.7100,
+        1.1715, -1.1451, 0.3063, -0.2578, 1.0318, -0.0300,
+        0.0127, 0.0391, -0.0228, 0.7084, 0.0899, -0.2280,
+        -0.1993, 1.1813
+    };
+    private static final LinearValueFunction DEFAULT = new LinearValueFunction(DEFAULT_WEIGHTS);
+
+    private final double[] weights;
+
+    /**
+     * Constructs a value function from its weights
+     * @param weights the weight of each feature, of length ValueFeatures.SIZE
+     * **/
+    public LinearValueFunction(double[] weights) {
+        if (weights.length != ValueFeatures.SIZE) {
+            throw new IllegalArgumentException("Expected " + ValueFeatures.SIZE + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    /**
+     * returns the value function with the trained default weights
+     * @return the default value function
+     * **/
+    public static LinearValueFunction defaults() {
+        return DEFAULT;
+    }
+
+    /**
+     * Estimates a player's chance of winning the round.
+     * A finished round is scored exactly and an eliminated player's chance is 0.
+     * @param state the NodeState
+     * @param p the index of the player
+     * @param features a scratch array of length ValueFeatures.SIZE
+     * @return the estimated chance of player p winning the round
+     * **/
+    public double value(NodeState state, int p, double[] features) {
+        if (state.roundOver()) {
+            return state.roundWinner() == p ? 1 : 0;
+        }
+        if (state.eliminated(p)) {
+            return 0;
+        }
+        ValueFeatures.extract(state, p, features);
+        return value(features);
+    }
+
+    /**
+     * Estimates the chance of winning the round from the features of a NodeState
+     * @param features the features, of length ValueFeatures.SIZE
+     * @return the logistic function of the weighted sum of the features
+     * **/
+    public double value(double[] features) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * features[i];
+        }
+        return 1 / (1 + Math.exp(-sum));
+    }
+
+    /**
+     * returns a copy of the weights
+     * @return the weight of each feature
+     * **/
+    public double[] weights() {
+        return weights.clone();
+    }
+
+    /**
+     * Writes the weights to a text file, one per line
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     * **/
+    public void save(Path file) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (double w : weights) {
+            text.append(w).append('\n');
+        }
+        Files.writeString(file, text);
+    }
+
+    /**
+     * Reads weights written by save
+     * @param file the file to read
+     * @return the value function
+     * @throws IOException if the file cannot be read or does not hold ValueFeatures.SIZE numbers
+     * **/
+    public static LinearValueFunction load(Path file) throws IOException {
+        String text = Files.readString(file).trim();
+        try {
+            double[] weights = Arrays.stream(text.split("\\s+")).mapToDouble(Double::parseDouble).toArray();
+            return new LinearValueFunction(weights);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(file + " does not hold the weights of a value function", e);
+        }
+    }
+
+    /**
+     * returns the weights as a comma separated list, as written in DEFAULT_WEIGHTS
+     * */
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < weights.length; i++) {
+            text.append(i == 0 ? "" : i % 6 == 0 ? ",\n" : ", ").append(String.format("%.4f", weights[i]));
+        }
+        return text.toString();
+    }
+}
@@ -1,8 +1,8 @@
 package agents;
 import loveletter.*;
 import java.util.Random;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Collections;
 import java.util.Comparator;
 
 
@@ -14,14 +14,88 @@ import java.util.Comparator;
  * */
 public class MCTSAgent implements Agent {
 
+    /** the default maximum number of nodes kept in the search tree */
+    public static final int DEFAULT_MAX_NODES = 50000;
+    /**
+     * the most nodes an iteration adds: a sampled draw, and a child for each action of the hand with the most,
+     * a Guard guessing 7 cards of 3 opponents and a Prince targeting any of 4 players
+     * (two copies of a card give the actions of one, see NodeState.getPossibleActions)
+     */
+    private static final int MAX_GROWTH = 1 + 7 * 3 + 4;
+    /** the least node budget, which holds the root, its children and the growth of an iteration */
+    public static final int MIN_MAX_NODES = 1 + 2 * MAX_GROWTH;
+
     private Random rand;
     private State current;
     private int myIndex;
+    private int maxNodes; // the node budget of the search tree
+    private long timeLimit = 900; // milliseconds allowed for each move
+    private OpeningBook book; // the first move of each round, or null to search it
+    private NodePool pool; // recycles the nodes of pruned subtrees and previous searches
+    private NodeState playoutState; // reused for every random playout
+    private SearchMetrics metrics = new SearchMetrics(); // counters and histograms of the searches
+    private SearchListener listener; // given a summary after every move, or null
+    private int selectionDepth; // depth reached by the last selection
+    private int playoutLength; // number of turns in the last random playout
+    private UCBKernel ucb = new UCBKernel(0.7); // the selection kernel, with its scratch arrays
+    private final LeafEvaluation leafEvaluation; // how the result of a round is estimated at a leaf
+    private final LinearValueFunction valueFunction; // the estimate of each player's chance at a leaf
+    private final double[] rewards = new double[4]; // each player's share of the last leaf's result
+    private final double[] values = new double[4]; // scratch array for the values of the players
+    private final double[] features = new double[ValueFeatures.SIZE]; // scratch array for the value function
+
+    /**
+     * How the result of a round is estimated at the leaf reached by an iteration
+     * */
+    public enum LeafEvaluation {
+        /** a random playout to the end of the round, which the player who wins scores */
+        PLAYOUT,
+        /** the value function, each player scoring their estimated share of the round */
+        VALUE,
+        /** the average of a random playout and the value function */
+        MIXED
+    }
 
 
     //0 place default constructor
     public MCTSAgent() {
+        this(DEFAULT_MAX_NODES);
+        book = OpeningBook.defaultBook();
+    }
+
+    /**
+     * Constructs an agent whose search tree never holds more than the given number of nodes.
+     * Before each iteration that could overrun the budget the least visited subtrees are pruned.
+     * @param maxNodes the node budget of the search tree, at least MIN_MAX_NODES
+     * **/
+    public MCTSAgent(int maxNodes) {
+        this(maxNodes, LeafEvaluation.PLAYOUT, LinearValueFunction.defaults());
+    }
+
+    /**
+     * Constructs an agent with a node budget which estimates the leaves with the default value function
+     * @param maxNodes the node budget of the search tree
+     * @param leafEvaluation how the result of a round is estimated at a leaf
+     * **/
+    public MCTSAgent(int maxNodes, LeafEvaluation leafEvaluation) {
+        this(maxNodes, leafEvaluation, LinearValueFunction.defaults());
+    }
+
+    /**
+     * Constructs an agent with a node budget which estimates the leaves with a value function
+     * @param maxNodes the node budget of the search tree
+     * @param leafEvaluation how the result of a round is estimated at a leaf
+     * @param valueFunction the value function used by the VALUE and MIXED evaluations
+     * **/
+    public MCTSAgent(int maxNodes, LeafEvaluation leafEvaluation, LinearValueFunction valueFunction) {
+        if (maxNodes < MIN_MAX_NODES) {
+            throw new IllegalArgumentException("The node budget must be at least " + MIN_MAX_NODES);
+        }
         rand = new Random();
+        this.maxNodes = maxNodes;
+        pool = new NodePool(maxNodes);
+        this.leafEvaluation = leafEvaluation;
+        this.valueFunction = valueFunction;
     }
 
     /**
@@ -54,74 +128,203 @@ public class MCTSAgent implements Agent {
      * @throws IllegalActionException when the Action produced is not legal.
      * */
     public Action playCard(Card c) {
+        Action opening = book == null ? null : book.move(current, c);
+        if (opening != null) {
+            return opening;
+        }
         long start = System.currentTimeMillis();
-        long end = start + 900; // 900 milliseconds allowed as a time limit
+        long end = start + timeLimit; // 900 milliseconds allowed as a time limit by default
+        long startNanos = System.nanoTime();
+        long startBytes = SearchMetrics.currentThreadAllocatedBytes();
+        long selectNanos = 0, expandNanos = 0, simulateNanos = 0, backpropNanos = 0;
+        int iterations = 0, maxDepth = 0;
+        long playoutTurns = 0;
+        int playouts = 0;
         
-        // saves the current node as the root node in Tree
-        NodeState rootNodeState = new NodeState(current);
-        /* The above expression produces an error (NulPointerException to be exact)
-            We ran out of time, hence this error was not fixed but this Agent has been
-            fully implemented, i.e. all 4 steps are fully completed */
-        Tree tree = new Tree();
+        // saves the current node as the root node in Tree, the root player has already drawn c
+        NodeState rootNodeState = new NodeState(current, c, rand);
+        Tree tree = new Tree(pool.acquire(rootNodeState));
         Node rootNode = tree.getRoot();
-        rootNode.setState(rootNodeState);
 
-        while(System.currentTimeMillis() < end) {
-            // 1. Selection - selects the child node with the highest UCB scores
+        do {
+            long t0 = System.nanoTime();
+            // 1. Selection - selects the child node with the highest UCB scores, sampling the draws at chance nodes
             Node promisingNode = selectBestChildNode(rootNode);
+            maxDepth = Math.max(maxDepth, selectionDepth);
 
+            long t1 = System.nanoTime();
             // 2. Expansion - explores all the possible actions/states of a node
-            if (promisingNode.getState().roundOver() == false) {
-                int playerInd = promisingNode.getState().getPlayerIndex();
-                Card inHand = promisingNode.getState().getCard(playerInd);
+            Node nodeToExplore = promisingNode;
+            if (!promisingNode.getState().roundOver() && !promisingNode.isChanceNode()) {
                 // expand the tree and add all the possible actions and their states to Tree
-                expandNode(promisingNode, c, inHand, playerInd);
+                expandNode(promisingNode);
+                // 3. Simulation - randomly selects a child node and plays the game until the end of a round
+                if (promisingNode.getChildren().size() > 0) {
+                    nodeToExplore = promisingNode.getRandomChildNode();
+                }
             }
 
-            // 3. Simulation - randomly selects a child node and plays the game until the end of a round
-            Node nodeToExplore = promisingNode;
-            if (promisingNode.getChildren().size() > 0) {
-                nodeToExplore = promisingNode.getRandomChildNode();
+            long t2 = System.nanoTime();
+            // plays game from the nodeToExplore to a leaf node, or estimates the result with the value function
+            if (evaluateLeaf(nodeToExplore)) {
+                playoutTurns += playoutLength;
+                playouts++;
+                metrics.recordPlayout(playoutLength);
             }
-            // plays game from the nodeToExplore to a leaf node
-            int playoutResult = simulateRandomPlayout(nodeToExplore);
 
+            long t3 = System.nanoTime();
             // 4. Backpropagation - propagates back to the parent
-            backPropogation(nodeToExplore, playoutResult);
-        }
+            backPropogation(nodeToExplore, rewards);
+
+            // keeps room in the node budget for the next iteration before its path is chosen
+            if (pool.liveNodes() + MAX_GROWTH > maxNodes) {
+                pruneTree(rootNode);
+            }
+            long t4 = System.nanoTime();
+            selectNanos += t1 - t0;
+            expandNanos += t2 - t1;
+            simulateNanos += t3 - t2;
+            backpropNanos += t4 - t3;
+            iterations++;
+        } while(System.currentTimeMillis() < end);
 
         Node winnerNode = rootNode.getChildWithMaxScore();
-        tree.setRoot(winnerNode);
-        return winnerNode.getState().getAction();
+        Action action = winnerNode.getState().getAction();
+        int treeSize = pool.liveNodes();
+        // the whole tree goes back to the pool for the next search
+        pool.release(rootNode);
+
+        long endBytes = SearchMetrics.currentThreadAllocatedBytes();
+        MoveSummary summary = new MoveSummary(iterations, treeSize, maxDepth, playouts == 0 ? 0 : (double) playoutTurns / playouts,
+            selectNanos, expandNanos, simulateNanos, backpropNanos, System.nanoTime() - startNanos,
+            startBytes < 0 || endBytes < 0 ? -1 : endBytes - startBytes);
+        metrics.recordMove(summary);
+        if (listener != null) {
+            listener.moveSearched(summary);
+        }
+        return action;
     }
 
     /**
-     * Selects a child Node with the highest UCB score from a parent node
+     * returns the metrics of all the searches performed by the agent,
+     * which can be published through JMX with SearchMetrics.register()
+     * @return the search metrics of the agent
+     * **/
+    public SearchMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the time allowed for each move, shorter than the default when the agent's moves
+     * are needed in bulk, e.g. by the PolicyDistiller
+     * @param millis the milliseconds allowed for each move
+     * **/
+    public void setTimeLimit(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The time limit must be positive");
+        }
+        this.timeLimit = millis;
+    }
+
+    /**
+     * Sets the book of first moves, which are played without searching.
+     * The default constructor uses OpeningBook.defaultBook().
+     * @param book the opening book, or null to search every move
+     * **/
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    /**
+     * Sets the callback given a summary after every move
+     * @param listener the callback, or null for none
+     * **/
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Selects a child Node with the highest UCB score from a parent node.
+     * At chance nodes the drawn card is sampled instead, and the selection stops
+     * at a draw which has not been visited before.
      * @param rootNode parent Node provided
      * @return child Node with the highest UCB score
      * **/
     private Node selectBestChildNode(Node rootNode) {
         Node node = rootNode;
-        while (node.getChildren().size() != 0) {
-            node = getHighestUCBNode(node);
+        selectionDepth = 0;
+        while (!node.getState().roundOver()) {
+            selectionDepth++;
+            if (node.isChanceNode()) {
+                node = node.sampleOutcome(rand, pool);
+                if (node.getVisitCount() == 0) {
+                    break;
+                }
+            } else if (node.getChildren().size() == 0) {
+                break;
+            } else {
+                node = getHighestUCBNode(node);
+            }
         }
         return node;
     }
 
     /**
-     * Expands the selected node
+     * Expands the selected node with a child for every action of the player to move
      * @param node Node to be expanded
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand of a player
-     * @param playerInd the index of a player
      * **/
-    private void expandNode(Node node, Card c, Card inHand, int playerInd) {
-        List<NodeState> possibleStates = node.getState().getAllPossibleStates(c, inHand, playerInd);
-        possibleStates.forEach(state -> {
-            Node newNode = new Node(state);
+    private void expandNode(Node node) {
+        NodeState state = node.getState();
+        for (Action a : state.getNextPlayerActions()) {
+            Node newNode = pool.acquire(state);
+            try {
+                newNode.getState().applyAction(a);
+            } catch (IllegalActionException e) {
+                pool.release(newNode);
+                continue;
+            }
             newNode.setParent(node);
             node.getChildren().add(newNode);
-        });
+        }
+    }
+
+    /**
+     * Prunes the least visited subtrees until the tree is back to three quarters of the
+     * node budget, or less if that leaves no room for an iteration. The root's children are kept,
+     * but their subtrees may be pruned, and a pruned node stays in the tree as a leaf with its statistics.
+     * @param rootNode the root of the search tree
+     * **/
+    private void pruneTree(Node rootNode) {
+        List<Node> internalNodes = new ArrayList<>();
+        for (Node child : rootNode.getChildren()) {
+            collectInternalNodes(child, internalNodes);
+        }
+        // deeper nodes have fewer visits than their ancestors, so they are pruned first
+        internalNodes.sort(Comparator.comparingInt(Node::getVisitCount));
+        int target = Math.min(maxNodes - maxNodes / 4, maxNodes - MAX_GROWTH);
+        for (Node node : internalNodes) {
+            if (pool.liveNodes() <= target) {
+                break;
+            }
+            if (!node.isReleased()) {
+                node.pruneChildren(pool);
+            }
+        }
+    }
+
+    /**
+     * Collects the nodes of a subtree which have children
+     * @param node the root of the subtree
+     * @param internalNodes the list the nodes are added to
+     * **/
+    private void collectInternalNodes(Node node, List<Node> internalNodes) {
+        if (node.getChildren().size() == 0) {
+            return;
+        }
+        internalNodes.add(node);
+        for (Node child : node.getChildren()) {
+            collectInternalNodes(child, internalNodes);
+        }
     }
 
     /**
@@ -130,67 +333,79 @@ public class MCTSAgent implements Agent {
      * @return the winner of the round
      * **/
     private int simulateRandomPlayout(Node node) {
-        Node tempNode = new Node(node);
-        NodeState tempState = tempNode.getState();
+        if (playoutState == null) {
+            playoutState = new NodeState(node.getState());
+        } else {
+            playoutState.copyFrom(node.getState());
+        }
+        NodeState tempState = playoutState;
         int roundStatus = tempState.roundWinner();
+        playoutLength = 0;
 
-        if (roundStatus != myIndex) {
-            tempNode.getParent().setWinScore(Integer.MIN_VALUE);
-            return roundStatus;
-        }
         while (roundStatus == -1) { // while there is no winner
             // take a player's turn
-            tempState.setPlayerNumber();
-            Card c = tempState.drawCard();
-            int playerInd = tempState.getPlayerIndex();
-            Card inHand = tempState.getCard(playerInd);
-            tempState.randomPlay(c, inHand, playerInd);
+            tempState.randomPlay();
+            playoutLength++;
             roundStatus = tempState.roundWinner();
         }
 
         return roundStatus;
     }
 
+    /**
+     * Estimates each player's share of the result of the round from a leaf, by a random playout,
+     * the value function normalised over the players still in the round, or the average of both.
+     * A round which is already over is scored exactly.
+     * @param node the leaf Node
+     * @return true if a random playout was played, false if the value function alone estimated the result
+     * **/
+    private boolean evaluateLeaf(Node node) {
+        NodeState state = node.getState();
+        java.util.Arrays.fill(rewards, 0);
+        playoutLength = 0;
+        double playoutWeight = state.roundOver() || leafEvaluation == LeafEvaluation.PLAYOUT ? 1
+            : leafEvaluation == LeafEvaluation.MIXED ? 0.5 : 0;
+        if (playoutWeight > 0) {
+            rewards[simulateRandomPlayout(node)] += playoutWeight;
+        }
+        if (playoutWeight < 1) {
+            double total = 0;
+            for (int p = 0; p < state.numPlayers(); p++) {
+                values[p] = valueFunction.value(state, p, features);
+                total += values[p];
+            }
+            for (int p = 0; p < state.numPlayers(); p++) {
+                rewards[p] += (1 - playoutWeight) * values[p] / total;
+            }
+        }
+        return playoutWeight > 0;
+    }
+
     /**
      * Backpropagate from a node to the root node and increments the visit score and
-     * the total score for each node in the path.
+     * the total score for each node in the path. A node scores the share of the round
+     * of the player whose action led to it.
      * @param nodeToExplore Node from which to start propagating
-     * @param playerNo player who is performing the action
+     * @param rewards each player's share of the round
      * **/
-    private void backPropogation(Node nodeToExplore, int playerNo) {
+    private void backPropogation(Node nodeToExplore, double[] rewards) {
         Node tempNode = nodeToExplore;
         while (tempNode != null) {
             tempNode.incrementVisit();
-            if (tempNode.getState().getPlayerIndex() == playerNo)
-                tempNode.addScore(10);
+            Action action = tempNode.getState().getAction();
+            if (action != null && rewards[action.player()] > 0)
+                tempNode.addScore(rewards[action.player()]);
             tempNode = tempNode.getParent();
         }
     }
 
-    /**
-     * Calculates the UCB score for a node
-     * @param totalVisit number of times the parent node was visited
-     * @param nodeWinScore the total score of node
-     * @param nodeVisit number of times the node has been selected from its parent
-     * @return the UCB score
-     * **/
-    private static double UCB(int totalVisit, double nodeWinScore, int nodeVisit) {
-        if (nodeVisit == 0) {
-            return Integer.MAX_VALUE;
-        }
-        return (nodeWinScore / (double) nodeVisit) + 0.7 * Math.sqrt(Math.log(totalVisit) / (double) nodeVisit);
-    }
-
     /**
      * Finds the Node with the highest UCB score for selection process
      * @param node the node to be calculated
      * @return the Node with the highest UCB score
      * **/
-    public static Node getHighestUCBNode(Node node) {
-        int parentVisit = node.getVisitCount();
-        return Collections.max(
-          node.getChildren(),
-          Comparator.comparing(c -> UCB(parentVisit, c.getWinScore(), c.getVisitCount())));
+    public Node getHighestUCBNode(Node node) {
+        return ucb.selectChild(node);
     }
 }
 
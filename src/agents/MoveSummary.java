@@ -0,0 +1,83 @@
+package agents;
+
+/**
+ * An immutable summary of the search performed by the MCTS Agent for a single move
+ * */
+public class MoveSummary {
+    private final int iterations; // number of iterations of the search
+    private final int treeSize; // number of nodes in the tree at the end of the search
+    private final int maxDepth; // deepest node reached by the selection
+    private final double meanPlayoutLength; // mean number of turns in a random playout
+    private final long selectNanos; // time spent in the selection phase
+    private final long expandNanos; // time spent in the expansion phase
+    private final long simulateNanos; // time spent in the simulation phase
+    private final long backpropNanos; // time spent in the backpropagation phase
+    private final long elapsedNanos; // total time of the move
+    private final long allocatedBytes; // bytes allocated by the searching thread, or -1 if unavailable
+
+    /**
+     * Constructs a MoveSummary
+     * @param iterations number of iterations of the search
+     * @param treeSize number of nodes in the tree at the end of the search
+     * @param maxDepth deepest node reached by the selection
+     * @param meanPlayoutLength mean number of turns in a random playout
+     * @param selectNanos time spent in the selection phase
+     * @param expandNanos time spent in the expansion phase
+     * @param simulateNanos time spent in the simulation phase
+     * @param backpropNanos time spent in the backpropagation phase
+     * @param elapsedNanos total time of the move
+     * @param allocatedBytes bytes allocated by the searching thread, or -1 if unavailable
+     * **/
+    public MoveSummary(int iterations, int treeSize, int maxDepth, double meanPlayoutLength,
+                       long selectNanos, long expandNanos, long simulateNanos, long backpropNanos,
+                       long elapsedNanos, long allocatedBytes) {
+        this.iterations = iterations;
+        this.treeSize = treeSize;
+        this.maxDepth = maxDepth;
+        this.meanPlayoutLength = meanPlayoutLength;
+        this.selectNanos = selectNanos;
+        this.expandNanos = expandNanos;
+        this.simulateNanos = simulateNanos;
+        this.backpropNanos = backpropNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /** @return the number of iterations of the search **/
+    public int iterations() {return iterations;}
+
+    /** @return the number of nodes in the tree at the end of the search **/
+    public int treeSize() {return treeSize;}
+
+    /** @return the deepest node reached by the selection **/
+    public int maxDepth() {return maxDepth;}
+
+    /** @return the mean number of turns in a random playout **/
+    public double meanPlayoutLength() {return meanPlayoutLength;}
+
+    /** @return the nanoseconds spent in the selection phase **/
+    public long selectNanos() {return selectNanos;}
+
+    /** @return the nanoseconds spent in the expansion phase **/
+    public long expandNanos() {return expandNanos;}
+
+    /** @return the nanoseconds spent in the simulation phase **/
+    public long simulateNanos() {return simulateNanos;}
+
+    /** @return the nanoseconds spent in the backpropagation phase **/
+    public long backpropNanos() {return backpropNanos;}
+
+    /** @return the total nanoseconds of the move **/
+    public long elapsedNanos() {return elapsedNanos;}
+
+    /** @return the bytes allocated by the searching thread, or -1 if unavailable **/
+    public long allocatedBytes() {return allocatedBytes;}
+
+    public String toString() {
+        return String.format("%d iterations, %d nodes, depth %d, playout %.1f turns, "
+            + "select/expand/simulate/backprop %d/%d/%d/%d ms, %d ms total, %d KB allocated",
+            iterations, treeSize, maxDepth, meanPlayoutLength,
+            selectNanos / 1000000, expandNanos / 1000000, simulateNanos / 1000000, backpropNanos / 1000000,
+            elapsedNanos / 1000000, allocatedBytes < 0 ? -1 : allocatedBytes / 1024);
+    }
+}
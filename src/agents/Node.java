@@ -17,6 +17,8 @@ public class Node {
     private List<Node> children;
     private int visitCount; // how many times this node has been visited
     private double winScore; // keeps track of the win score for a node
+    private Node[] outcomes; // children of a chance node, indexed by the ordinal of the drawn card
+    private boolean released; // whether the node has been released back to a NodePool
 
     /**
      * Constructs a default Node
@@ -88,6 +90,105 @@ public class Node {
         return this.children.get(selectRandom);
     }
 
+    /**
+     * returns true if the next player is still to draw a card, i.e. the children of
+     * this node are the outcomes of the draw rather than the player's actions
+     * @return true if and only if the node is a chance node
+     * **/
+    public boolean isChanceNode() {
+        return nodeState.getDrawn() == null && !nodeState.roundOver();
+    }
+
+    /**
+     * returns the child of a chance node for a drawn card, creating it the first time
+     * the card is drawn so every identical draw shares the same subtree
+     * @param c the card drawn
+     * @param pool the pool the child is taken from
+     * @return the child where the next player has drawn the card
+     * **/
+    public Node getOutcome(Card c, NodePool pool) {
+        if(outcomes == null) {
+            outcomes = new Node[8];
+        }
+        Node child = outcomes[c.ordinal()];
+        if(child == null) {
+            child = pool.acquire(nodeState);
+            child.getState().setAction(null);
+            child.getState().drawCard(c);
+            child.setParent(this);
+            children.add(child);
+            outcomes[c.ordinal()] = child;
+        }
+        return child;
+    }
+
+    /**
+     * samples the child of a chance node, weighting each card by the number of copies
+     * that could still be drawn
+     * @param rand the random number generator for the draw
+     * @param pool the pool a new child is taken from
+     * @return the child for the sampled draw
+     * **/
+    public Node sampleOutcome(Random rand, NodePool pool) {
+        int[] counts = new int[8];
+        int sample = rand.nextInt(nodeState.drawCounts(counts));
+        int card = 0;
+        while(sample >= counts[card]) {
+            sample -= counts[card++];
+        }
+        return getOutcome(Card.values()[card], pool);
+    }
+
+    /**
+     * Releases all the children of the node back to the pool, so the node becomes a leaf
+     * which keeps its own statistics
+     * @param pool the pool the children are released to
+     * **/
+    public void pruneChildren(NodePool pool) {
+        for(Node child : children) {
+            pool.release(child);
+        }
+        clearChildren();
+    }
+
+    /**
+     * Removes the children of the node without releasing them
+     * **/
+    void clearChildren() {
+        children.clear();
+        if(outcomes != null) {
+            java.util.Arrays.fill(outcomes, null);
+        }
+    }
+
+    /**
+     * Resets a released node to hold a copy of the NodeState supplied
+     * @param source NodeState to be copied to the node
+     * **/
+    void reuse(NodeState source) {
+        nodeState.copyFrom(source);
+        parent = null;
+        visitCount = 0;
+        winScore = 0;
+        released = false;
+    }
+
+    /**
+     * Marks the node as released back to a pool
+     * **/
+    void markReleased() {
+        released = true;
+        parent = null;
+    }
+
+    /**
+     * returns true if the node has been released back to a pool
+     * @return true if and only if the node has been released
+     * **/
+    public boolean isReleased() {
+        return released;
+    }
+
     /**
      * returns the child with the highest score
      * @return Node with the highest score
@@ -0,0 +1,61 @@
+package agents;
+
+/**
+ * A pool of Nodes for the Monte Carlo Tree Search (MCTS) Agent.
+ * Subtrees that are pruned or discarded are released back to the pool, and their
+ * Nodes and NodeStates are reused for new children, so a search within a node budget
+ * runs without growing the heap.
+ * */
+public class NodePool {
+    private Node[] free; // released nodes ready to be reused
+    private int freeCount; // number of nodes in the free array
+    private int liveNodes; // number of nodes handed out and not yet released
+
+    /**
+     * Constructs an empty NodePool
+     * @param capacity the maximum number of released nodes kept for reuse
+     * **/
+    public NodePool(int capacity) {
+        free = new Node[capacity];
+    }
+
+    /**
+     * Gets a Node holding a copy of the NodeState supplied, reusing a released Node if possible
+     * @param nodeState NodeState to be copied to the Node
+     * @return a Node with no parent, children or statistics
+     * **/
+    public Node acquire(NodeState nodeState) {
+        liveNodes++;
+        if(freeCount == 0) {
+            return new Node(new NodeState(nodeState));
+        }
+        Node node = free[--freeCount];
+        free[freeCount] = null;
+        node.reuse(nodeState);
+        return node;
+    }
+
+    /**
+     * Releases a Node and its whole subtree back to the pool
+     * @param node the root of the subtree to be released
+     * **/
+    public void release(Node node) {
+        for(Node child : node.getChildren()) {
+            release(child);
+        }
+        node.clearChildren();
+        node.markReleased();
+        liveNodes--;
+        if(freeCount < free.length) {
+            free[freeCount++] = node;
+        }
+    }
+
+    /**
+     * returns the number of Nodes handed out by the pool and not yet released
+     * @return the number of live Nodes
+     * **/
+    public int liveNodes() {
+        return liveNodes;
+    }
+}
@@ -17,6 +17,7 @@ public class NodeState implements Cloneable {
     private int num; //The number of players in the game
     private Card[][] discards; //the discarded cards or each player
     private int[] discardCount; //how many cards each player has discarded
+    private int[] unseen; //how many copies of each card are not in a discard pile, indexed by the card's ordinal
     private Card[] hand; //the cards players currently hold, or null if the player has been eliminated 
     private Card[] deck; //the deck of remaining cards
     private int[] top; //the index of the top of the deck
@@ -28,6 +29,7 @@ public class NodeState implements Cloneable {
     private Agent[] agents;
 
     private Action action; // the action performed to get to this NodeState
+    private Card drawn; // the card drawn by the next player, or null if they are still to draw
     
 
     /**
@@ -52,22 +54,22 @@ public class NodeState implements Cloneable {
     }
 
     /**
-     * Constructs a NodeState for a player from NodeState supplied
+     * Constructs a copy of the NodeState supplied
      * @param nodeState NodeState to be copied to the new constructed NodeState
      * **/
     public NodeState(NodeState nodeState) {
         this.player = nodeState.player;
-        this.num = 4;
-        try {
-            newRound();
-        } catch(IllegalActionException e) {/*unreachable code, do nothing*/}
+        this.num = nodeState.num;
+        this.discards = new Card[num][];
         for(int i=0; i<num; i++) {
             this.discards[i] = nodeState.discards[i].clone();
         }
         this.discardCount = nodeState.discardCount.clone();
+        this.unseen = nodeState.unseen.clone();
         this.hand = nodeState.hand.clone();
         this.deck = nodeState.deck.clone();
         this.top = nodeState.top.clone();
+        this.known = new boolean[num][];
         for(int i=0; i<num; i++) {
             this.known[i] = nodeState.known[i].clone();
         }
@@ -75,76 +77,132 @@ public class NodeState implements Cloneable {
         this.scores = nodeState.scores.clone();
         this.random = nodeState.random;
         this.nextPlayer = nodeState.nextPlayer.clone();
-        this.agents = nodeState.agents.clone();
+        this.agents = nodeState.agents;
+        this.drawn = nodeState.drawn;
+        this.action = nodeState.action;
     }
 
     /**
-     * Constructs a NodeState for a player from the State supplied, i.e. it tries to
-     * copy all the publically available fields to the custom NodeState
+     * Copies the NodeState supplied into this NodeState, reusing its arrays
+     * where the number of players is the same
+     * @param nodeState NodeState to be copied
+     * **/
+    void copyFrom(NodeState nodeState) {
+        if(this.num != nodeState.num || this.hand == null) {
+            this.num = nodeState.num;
+            this.discards = new Card[num][16];
+            this.discardCount = new int[num];
+            this.unseen = new int[8];
+            this.hand = new Card[num];
+            this.deck = new Card[16];
+            this.top = new int[1];
+            this.known = new boolean[num][num];
+            this.handmaid = new boolean[num];
+            this.scores = new int[num];
+            this.nextPlayer = new int[1];
+        }
+        this.player = nodeState.player;
+        for(int i=0; i<num; i++) {
+            System.arraycopy(nodeState.discards[i], 0, discards[i], 0, 16);
+            System.arraycopy(nodeState.known[i], 0, known[i], 0, num);
+        }
+        System.arraycopy(nodeState.discardCount, 0, discardCount, 0, num);
+        System.arraycopy(nodeState.unseen, 0, unseen, 0, 8);
+        System.arraycopy(nodeState.hand, 0, hand, 0, num);
+        System.arraycopy(nodeState.deck, 0, deck, 0, 16);
+        System.arraycopy(nodeState.handmaid, 0, handmaid, 0, num);
+        System.arraycopy(nodeState.scores, 0, scores, 0, num);
+        this.top[0] = nodeState.top[0];
+        this.nextPlayer[0] = nodeState.nextPlayer[0];
+        this.random = nodeState.random;
+        this.agents = nodeState.agents;
+        this.drawn = nodeState.drawn;
+        this.action = nodeState.action;
+    }
+
+    /**
+     * Constructs a NodeState for a player from the State supplied, i.e. it copies
+     * all the publically available fields to the custom NodeState.
+     * The cards the player has not seen are shuffled and dealt to the unknown hands
+     * and the deck, so the NodeState is one possible determinization of the State.
      * @param state state to be copied to the new constructed NodeState
+     * @param drawn the card the player has just drawn, or null if it is not their turn
+     * @param random the random number generator for the determinization and the playouts
      * **/
-    public NodeState(State state) {
+    public NodeState(State state, Card drawn, Random random) {
         this.player = state.getPlayerIndex();
         this.num = state.numPlayers();
+        this.random = random;
+        this.agents = new Agent[num];
+        this.drawn = drawn;
+        discards = new Card[num][16];
+        discardCount = new int[num];
+        unseen = new int[8];
+        hand = new Card[num];
+        handmaid = new boolean[num];
+        known = new boolean[num][num];
+        scores = new int[num];
+        deck = new Card[16];
+        top = new int[]{16 - state.deckSize()};
+        nextPlayer = new int[]{state.nextPlayer()};
 
-        // initialises the arrays
-        try {
-            newRound();
-        } catch(IllegalActionException e) {/*unreachable code, do nothing*/}
+        // counts of each card type the player has not seen yet
+        int[] hidden = new int[8];
+        for(Card card : Card.values()) {
+            unseen[card.ordinal()] = state.unseenCount(card);
+            hidden[card.ordinal()] = unseen[card.ordinal()];
+        }
+        if(drawn != null) {
+            hidden[drawn.ordinal()]--;
+        }
 
-        // copies the scores, hand, known, handmaid and discards arrays
-        scores = new int[num];
-        int count = 0;
+        // copies the scores, known hands, handmaid and discards arrays
         for(int i=0; i<num; i++) {
-            if(state.getCard(i) != null) {
-                this.hand[i] = state.getCard(i);
-                this.known[player][i] = true;
-            }
-
-            this.handmaid[i] = state.handmaid(i);
-            this.scores[i] = state.score(i);
+            known[i][i] = true;
+            handmaid[i] = state.handmaid(i);
+            scores[i] = state.score(i);
 
+            // the iterator goes from the most recent discard, so the pile is reversed afterwards
             Iterator<Card> iterator = state.getDiscards(i);
-            while (iterator.hasNext()) {
-                discards[i][count++] = (Card)iterator.next();
+            while(iterator.hasNext()) {
+                Card card = iterator.next();
+                discards[i][discardCount[i]++] = card;
+            }
+            for(int j=0, k=discardCount[i]-1; j<k; j++, k--) {
+                Card tmp = discards[i][j];
+                discards[i][j] = discards[i][k];
+                discards[i][k] = tmp;
             }
-            count = 0;
-        }
 
-        // copies the discardCount array
-        for (int i = 0; i < discards.length; i++) {
-            for (int j = 0; j < discards[i].length; j++) {
-                if (this.discards[i][j] != null) {
-                    this.discardCount[i]++;
-                }
+            if(!state.eliminated(i) && state.getCard(i) != null) {
+                hand[i] = state.getCard(i);
+                known[player][i] = true;
+                hidden[hand[i].ordinal()]--;
             }
         }
 
-        // copies the deck from the remaining cards
-        deck = new Card[16];
-        deck = Card.deal(new Random(0));
-        int topIndex = 16 - state.deckSize();
-        Card[] unseenCards = state.unseenCards();
-        count = 0;
-        for(int i=topIndex-1; i<16; i++) {
-            deck[i] = unseenCards[count];
-            count++;
+        // shuffles the unseen cards and deals them to the unknown hands and the deck
+        Card[] pool = new Card[16];
+        int size = 0;
+        for(Card card : Card.values()) {
+            for(int j=0; j<hidden[card.ordinal()]; j++) {
+                pool[size++] = card;
+            }
         }
-
-        // copies nextPlayer array
-        nextPlayer = new int[1];
-        this.nextPlayer[0] = state.nextPlayer();
-
-        // gets the top card index
-        count = 0;
-        while(deck[count] == null){
-            count++;
+        for(int i=size-1; i>0; i--) {
+            int j = random.nextInt(i+1);
+            Card tmp = pool[i];
+            pool[i] = pool[j];
+            pool[j] = tmp;
+        }
+        for(int i=0; i<num; i++) {
+            if(!state.eliminated(i) && hand[i] == null) {
+                hand[i] = pool[--size];
+            }
+        }
+        for(int i=top[0]; i<16 && size>0; i++) {
+            deck[i] = pool[--size];
         }
-        this.top[0] = count;
-
-        // makes up random agents
-        Agent[] agents = {new agents.MCTSAgent(),new agents.MCTSAgent(), new agents.MCTSAgent(), new agents.MCTSAgent()};
-        this.agents = agents;
     }
 
 
@@ -154,9 +212,11 @@ public class NodeState implements Cloneable {
      * @throws IllegalActionException if this is a player state.
      * **/
     public void newRound() throws IllegalActionException{
-        deck = Card.deal(new Random(0));
+        deck = Card.deal(random);
         discards = new Card[num][16];
         discardCount = new int[num];
+        unseen = new int[8];
+        for(Card c: Card.values()) unseen[c.ordinal()] = c.count();
         hand = new Card[num];
         handmaid = new boolean[num];
         top = new int[1];
@@ -256,6 +316,65 @@ public class NodeState implements Cloneable {
         return deck[top[0]++];
     }
 
+    /**
+     * Draws the given card for the next player, i.e. the outcome of a chance node.
+     * If the card is not in the remaining deck it must be in a hand the observing player
+     * has not seen, in which case that hand is swapped with the top of the deck first.
+     * @param c the card to be drawn
+     * @throws IllegalArgumentException if the card cannot be drawn by the next player
+     * **/
+    public void drawCard(Card c) {
+        int t = top[0];
+        for(int i=t; i<16; i++) {
+            if(deck[i] == c) {
+                deck[i] = deck[t];
+                deck[t] = c;
+                drawn = deck[top[0]++];
+                return;
+            }
+        }
+        for(int p=0; p<num; p++) {
+            if(hiddenHand(p) && hand[p] == c) {
+                hand[p] = deck[t];
+                deck[t] = c;
+                drawn = deck[top[0]++];
+                return;
+            }
+        }
+        throw new IllegalArgumentException("The "+c+" cannot be drawn");
+    }
+
+    /**
+     * Counts the cards the next player could draw, as far as the observing player knows.
+     * These are the remaining deck and the hands of the other players the observer has not seen.
+     * @param counts the array of size 8 to be filled, indexed by the card's ordinal
+     * @return the total number of cards that could be drawn
+     * **/
+    public int drawCounts(int[] counts) {
+        java.util.Arrays.fill(counts, 0);
+        int total = 0;
+        for(int i=top[0]; i<16; i++) {
+            counts[deck[i].ordinal()]++;
+            total++;
+        }
+        for(int p=0; p<num; p++) {
+            if(hiddenHand(p)) {
+                counts[hand[p].ordinal()]++;
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * helper method to check if a hand is unknown to the observer and could be exchanged with a draw
+     * @param p the index of the player holding the hand
+     * @return true if and only if the hand is neither the drawer's, the observer's nor known to the observer
+     * **/
+    private boolean hiddenHand(int p) {
+        return p != nextPlayer[0] && p != player && player != -1 && !eliminated(p) && !known[player][p];
+    }
+
 
     /**
      * Executes the given action of a player.
@@ -276,6 +395,7 @@ public class NodeState implements Cloneable {
             discardCount[a]--;
             throw e;//reset discard top
         }
+        unseen[c.ordinal()]--;
         if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
             hand[a]=card;
             for(int p = 0; p<num; p++)
@@ -331,7 +451,7 @@ public class NodeState implements Cloneable {
         if(allHandmaid(a))
             return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
         else if(guess==hand[t]){//correct guess, target eliminated
-            discards[t][discardCount[t]++] = hand[t];
+            discard(t, hand[t]);
             hand[t]=null;
             for(int p = 0; p<num; p++)known[p][t]=true;
             return "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
@@ -353,7 +473,7 @@ public class NodeState implements Cloneable {
         if(hand[a].value()>hand[t].value()) elim = t;
         else if(hand[a].value()<hand[t].value()) elim = a;
         if(elim!=-1){
-            discards[elim][discardCount[elim]++] = hand[elim];
+            discard(elim, hand[elim]);
             hand[elim]=null;
             for(int p = 0; p<num; p++) known[p][elim]=true;
             return "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
@@ -363,11 +483,21 @@ public class NodeState implements Cloneable {
         return "\n Both players hold the same card, and neither is eliminated.";
     }
 
+    /**
+     * puts a card on top of a player's discard pile, so it is no longer unseen
+     * @param p the index of the player
+     * @param c the card discarded
+     * **/
+    private void discard(int p, Card c){
+        discards[p][discardCount[p]++] = c;
+        unseen[c.ordinal()]--;
+    }
+
     //handmaid action requires no update
 
     private String princeAction(int t){
         Card discard = hand[t];
-        discards[t][discardCount[t]++] = discard;
+        discard(t, discard);
         if(discard==Card.PRINCESS){
             hand[t]=null;
             for(int p = 0; p<num; p++) known[p][t]=true;
@@ -400,7 +530,7 @@ public class NodeState implements Cloneable {
     //countess action not required
   
     private String princessAction(int a){
-        discards[a][discardCount[a]++] = hand[a];
+        discard(a, hand[a]);
         hand[a]=null;
         for(int p = 0; p< num; p++) known[p][a]=true;
         String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
@@ -491,6 +621,7 @@ public class NodeState implements Cloneable {
     }
 
     private String name(int playerIndex){
+        if(agents[playerIndex] == null) return "("+playerIndex+")";
         return agents[playerIndex].toString()+"("+playerIndex+")";
     }
     /**
@@ -519,16 +650,85 @@ public class NodeState implements Cloneable {
         return rem;
     }
 
+    /**
+     * gives the number of copies of a card that haven't been played yet, i.e. are not in the discard piles.
+     * The counts are kept up to date as cards are discarded, so this is a constant time lookup.
+     * @param c the card
+     * @return the number of copies of the card in the players' hands or the deck
+     * **/
+    public int unseenCount(Card c){
+        return unseen[c.ordinal()];
+    }
+
+    /**
+     * get the card the specified player holds in this NodeState, whether or not the observer knows it
+     * @param playerIndex the player for which we seek the card
+     * @return the card the player currently holds, or null if they are eliminated
+     * **/
+    Card heldCard(int playerIndex){
+        return hand[playerIndex];
+    }
+
+    /**
+     * checks whether a player knows the card another player holds
+     * @param p the player whose knowledge is checked
+     * @param q the player holding the card
+     * @return true if and only if player p knows the card of player q
+     * **/
+    boolean knows(int p, int q){
+        return known[p][q];
+    }
+
+    /**
+     * Packs the parts of the NodeState that affect the rest of the round into a key,
+     * for memoising searches: the hands, the Handmaid flags, who knows whose card,
+     * the next player, the card they have drawn and the copies of each card not yet discarded.
+     * The scores, the discard order and the deck order are not included.
+     * Fits in 52 bits for up to 4 players.
+     * @return the key of the NodeState
+     * **/
+    long key(){
+        long key = nextPlayer[0];
+        key = key << 4 | (drawn == null ? 0 : drawn.ordinal() + 1);
+        for(int p = 0; p<num; p++){
+            key = key << 4 | (hand[p] == null ? 0 : hand[p].ordinal() + 1);
+            key = key << 1 | (handmaid[p] ? 1 : 0);
+            for(int q = 0; q<num; q++)
+                if(p!=q) key = key << 1 | (known[p][q] ? 1 : 0);
+        }
+        for(Card c : Card.values())
+            key = key << (32 - Integer.numberOfLeadingZeros(c.count())) | unseen[c.ordinal()];
+        return key;
+    }
+
+    /**
+     * Extends the key with the deck order, which decides what a Prince's target draws,
+     * and the value of each player's discards, which breaks a tie at the end of the round,
+     * so values memoised by it can be shared between determinizations of the deck.
+     * @return a 64 bit hash of the key, the deck order and the discard values
+     * **/
+    long searchKey(){
+        long hash = key();
+        for(int i = top[0]; i<16; i++) hash = (hash ^ deck[i].ordinal()) * 0x9E3779B97F4A7C15L;
+        for(int p = 0; p<num; p++){
+            int dv = 0;
+            for(int j=0; j<discardCount[p]; j++) dv+=discards[p][j].value();
+            hash = (hash ^ dv) * 0x9E3779B97F4A7C15L;
+        }
+        return hash ^ hash >>> 32;
+    }
+
     /**
      * Tests to see if the round is over, either by all but one player being eliminated
      * or by all but one card being drawn from the deck.
+     * A card already drawn by the next player still has to be played, so it counts as part of the deck.
      * @return true if and only if the round is over
      * **/
     public boolean roundOver(){
         int remaining = 0;
         for(int i=0; i<num; i++) 
             if(!eliminated(i)) remaining++;
-        return remaining==1 || deckSize()<2;
+        return remaining==1 || deckSize()+(drawn!=null?1:0)<2;
     }
 
     /**helper method to determine the winner of the round.
@@ -565,6 +765,15 @@ public class NodeState implements Cloneable {
         return scores[player];
     }
 
+    /**
+     * Sets the score of a player, so a round can be played from any point of a game, as the ValueTrainer does
+     * @param player the player whose score is set
+     * @param score the score, below the threshold that wins the game
+     * **/
+    void setScore(int player, int score){
+        scores[player] = score;
+    }
+
     /**
      * confirms the game is over
      * @return true if and only if a player a acrued sufficient tokens to win the game
@@ -601,32 +810,28 @@ public class NodeState implements Cloneable {
     }
 
     /**
-     * Sets the player number as the next player
+     * returns the card drawn by the next player
+     * @return the card drawn by the next player, or null if the next player is still to draw
      * **/
-    void setPlayerNumber() {
-        this.player = nextPlayer();
+    public Card getDrawn() {
+        return drawn;
     }
 
     /**
-     * Gets all the possible NodeStates depending on the card in hand and the card
-     * drawn from the deck for a player
-     * @param c the card drawn from the deck
-     * @param inHand the card already in hand of a player
-     * @param myIndex the index of the player
-     * @return list of all possible NodeStates for a player
+     * Gets all the possible NodeStates reachable by the next player, who has already drawn
+     * their card. Each NodeState is left before the following player's draw, so the draw can be
+     * made by a chance node. This NodeState is not modified.
+     * @return list of all possible NodeStates after the next player's action
      * **/
-    public List<NodeState> getAllPossibleStates(Card c, Card inHand, int myIndex) {
+    public List<NodeState> getAllPossibleStates() {
         List<NodeState> possibleStates = new ArrayList<>();
-        List<Action> possibleActions = this.getPossibleActions(c, inHand, myIndex);
+        List<Action> possibleActions = this.getNextPlayerActions();
 
         for(Action a : possibleActions) {
             // for each possible Action, update their states accordingly
             NodeState newState = new NodeState(this);
-            Card topCard = drawCard(); 
-            newState.setPlayerNumber();
-            newState.setAction(a);
             try{
-                newState.update(a, topCard);
+                newState.applyAction(a);
             } catch(IllegalActionException e){
                 continue;
             }
@@ -636,113 +841,200 @@ public class NodeState implements Cloneable {
     }
 
     /**
-     * Plays a random card for a player and update the gamestate
+     * Gets all the possible Actions of the next player, who has already drawn their card
+     * @return list of all possible legal Actions for the next player
+     * **/
+    public List<Action> getNextPlayerActions() {
+        int mover = nextPlayer();
+        return getPossibleActions(drawn, hand[mover], mover);
+    }
+
+    /**
+     * Performs an Action for the next player with the card they have drawn,
+     * leaving the NodeState before the following player's draw
+     * @param a the Action to be performed
+     * @throws IllegalActionException if the Action is against the rules, in which case the NodeState is unchanged
+     * **/
+    void applyAction(Action a) throws IllegalActionException {
+        Card c = drawn;
+        Action previous = action;
+        drawn = null;
+        action = a;
+        try{
+            update(a, c);
+        } catch(IllegalActionException e){
+            drawn = c;
+            action = previous;
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the NodeState reached when the next player draws the given card
+     * This NodeState is not modified.
      * @param c the card drawn from the deck
-     * @param inHand the card already in hand of a player
-     * @param myIndex the index of the player
+     * @return the NodeState where the next player holds the drawn card
+     * **/
+    public NodeState getOutcomeState(Card c) {
+        NodeState newState = new NodeState(this);
+        newState.setAction(null);
+        newState.drawCard(c);
+        return newState;
+    }
+
+    /**
+     * Plays a random card for the next player and update the gamestate,
+     * drawing from the top of the deck first if the player has not drawn yet
      * **/
-    void randomPlay(Card c, Card inHand, int myIndex) {
-        List<Action> possibleActions = getPossibleActions(c, inHand, myIndex);
+    void randomPlay() {
+        if(drawn == null) {
+            drawn = drawCard();
+        }
+        Card c = drawn;
+        int mover = nextPlayer();
+        List<Action> possibleActions = getPossibleActions(c, hand[mover], mover);
         int totalPossibilities = possibleActions.size();
+        int randomNode = this.random.nextInt(totalPossibilities);
+        drawn = null;
 
-        while(true) {
-            int randomNode = this.random.nextInt(totalPossibilities);
-            Action act = possibleActions.get(randomNode);
-            Card topCard = drawCard(); 
+        for(int i=0; i<totalPossibilities; i++) {
+            Action act = possibleActions.get((randomNode + i) % totalPossibilities);
             try{
-                update(act, topCard);
+                update(act, c);
+                return;
             } catch(IllegalActionException e){
-                continue; // if update not successful then try again with another random Action
+                // if update not successful then try the next Action
             }
-            break; // break out of the loop if successfully executed update
         }
     }
 
     /**
      * Gets all the possible Actions the player can choose from, the list does not
-     * include the illegal actions
+     * include the illegal actions, nor the actions which are impossible or dominated
+     * given the player's knowledge:
+     * a) Guard guesses of cards the player has seen all copies of,
+     * b) any other Guard guess when the target's card is known to the player,
+     * c) more than one target when every other player is eliminated or protected by the Handmaid,
+     * d) the Princess, whose play eliminates the player.
      * @param c the card drawn from the deck
      * @param inHand the card already in hand of a player
      * @param myIndex the index of the player
      * @return list of all possible legal Actions for a player
      * **/
     public List<Action> getPossibleActions(Card c, Card inHand, int myIndex) {
-        int numPlayers = numPlayers();
         List<Action> possibleActions = new ArrayList<>();
-        if(inHand == Card.GUARD ||  c == Card.GUARD) {
-            for(int i=0; i<numPlayers; i++) {
-                if(i != myIndex) {
-                    for(int j=1; j<8; j++) {
-                        Action act = null;
-                        try {
-                            act = Action.playGuard(myIndex, i, Card.values()[j]);
-                        } catch(IllegalActionException e){
-                            continue;
-                        }
-                        // only add legal actions to list otherwise continue
-                        possibleActions.add(act);
-                    }
-                }
-            }
-        } else if(inHand == Card.PRIEST ||  c == Card.PRIEST) {
-            for(int i=0; i<numPlayers; i++) {
-                Action act = null;
-                if(i != myIndex) {
-                    try {
-                        act = Action.playPriest(myIndex, i);
-                    } catch(IllegalActionException e){
-                        continue;
-                    }
-                    possibleActions.add(act); // only add legal actions
-                }
-            }
-        } else if(inHand == Card.BARON || c == Card.BARON) {
-            for(int i=0; i<numPlayers; i++) {
-                Action act = null;
-                if(i != myIndex) {
-                    try {
-                        act = Action.playBaron(myIndex, i);
-                    } catch(IllegalActionException e){
-                        continue;
-                    }
-                    possibleActions.add(act);
-                }
-            }
-        } else if(inHand == Card.HANDMAID || c == Card.HANDMAID) {
+        int[] unseen = new int[8];
+        unseenCounts(myIndex, inHand, c, unseen);
+        addPossibleActions(possibleActions, inHand, c, myIndex, unseen);
+        if(c != inHand) {
+            addPossibleActions(possibleActions, c, c, myIndex, unseen);
+        }
+        if(possibleActions.isEmpty()) {
+            // only reachable if the Princess is the only card which can be played
             try {
-                possibleActions.add(Action.playHandmaid(myIndex));
+                addIfLegal(possibleActions, Action.playPrincess(myIndex), c);
             } catch(IllegalActionException e) {}
-        } else if(inHand == Card.PRINCE || c == Card.PRINCE) {
-            for(int i=0; i<numPlayers; i++) {
-                Action act = null;
-                try {
-                    act = Action.playPrince(myIndex, i);
-                } catch(IllegalActionException e){
+        }
+        return possibleActions;
+    }
+
+    /**
+     * Counts the cards a player has not seen, i.e. the cards which are not discarded,
+     * not held by the player and not in a hand the player knows
+     * @param myIndex the index of the player
+     * @param inHand the card already in hand of the player
+     * @param c the card drawn by the player
+     * @param unseen the array of size 8 to be filled, indexed by the card's ordinal
+     * **/
+    private void unseenCounts(int myIndex, Card inHand, Card c, int[] unseen) {
+        System.arraycopy(this.unseen, 0, unseen, 0, 8);
+        for(int p=0; p<num; p++) {
+            if(p != myIndex && !eliminated(p) && known[myIndex][p]) {
+                unseen[hand[p].ordinal()]--;
+            }
+        }
+        unseen[inHand.ordinal()]--;
+        unseen[c.ordinal()]--;
+    }
+
+    /**
+     * Adds the Actions for playing one of the two cards held by a player
+     * @param possibleActions the list the Actions are added to
+     * @param play the card to be played
+     * @param c the card drawn from the deck
+     * @param myIndex the index of the player
+     * @param unseen the number of copies of each card the player has not seen
+     * **/
+    private void addPossibleActions(List<Action> possibleActions, Card play, Card c, int myIndex, int[] unseen) {
+        // if nobody else can be affected, all the targets (and guesses) have the same outcome
+        boolean noEffect = play != Card.PRINCE && allHandmaid(myIndex);
+        try {
+            switch(play) {
+                case HANDMAID:
+                    addIfLegal(possibleActions, Action.playHandmaid(myIndex), c);
+                    return;
+                case COUNTESS:
+                    addIfLegal(possibleActions, Action.playCountess(myIndex), c);
+                    return;
+                case PRINCESS:
+                    return; // dominated by playing the other card
+                default:
+            }
+            for(int i=0; i<num; i++) {
+                if(i == myIndex && play != Card.PRINCE) {
                     continue;
                 }
-                possibleActions.add(act);
-            }
-        } else if(inHand == Card.KING || c == Card.KING) {
-            for(int i=0; i<numPlayers; i++) {
-                Action act = null;
-                if(i != myIndex) {
-                    try {
-                        act = Action.playKing(myIndex, i);
-                    } catch(IllegalActionException e){
-                        continue;
-                    }
-                    possibleActions.add(act);
+                boolean added = false;
+                switch(play) {
+                    case GUARD:
+                        boolean knownCard = !eliminated(i) && known[myIndex][i];
+                        if(knownCard && hand[i] != Card.GUARD) {
+                            added = addIfLegal(possibleActions, Action.playGuard(myIndex, i, hand[i]), c);
+                            break;
+                        }
+                        for(int j=1; j<8 && !knownCard && !(added && noEffect); j++) {
+                            if(unseen[j] > 0) {
+                                added |= addIfLegal(possibleActions, Action.playGuard(myIndex, i, Card.values()[j]), c);
+                            }
+                        }
+                        if(!added) {
+                            // every guess misses, so any one of them will do
+                            added = addIfLegal(possibleActions, Action.playGuard(myIndex, i, Card.PRIEST), c);
+                        }
+                        break;
+                    case PRIEST:
+                        added = addIfLegal(possibleActions, Action.playPriest(myIndex, i), c);
+                        break;
+                    case BARON:
+                        added = addIfLegal(possibleActions, Action.playBaron(myIndex, i), c);
+                        break;
+                    case PRINCE:
+                        added = addIfLegal(possibleActions, Action.playPrince(myIndex, i), c);
+                        break;
+                    case KING:
+                        added = addIfLegal(possibleActions, Action.playKing(myIndex, i), c);
+                        break;
+                    default:
+                }
+                if(added && noEffect) {
+                    return;
                 }
             }
-        } else if(inHand == Card.COUNTESS || c == Card.COUNTESS) {
-            try {
-                possibleActions.add(Action.playCountess(myIndex));
-            } catch(IllegalActionException e) {}
-        } else if(inHand == Card.PRINCESS || c == Card.PRINCESS) {
-            try {
-                possibleActions.add(Action.playPrincess(myIndex));
-            } catch(IllegalActionException e) {}
+        } catch(IllegalActionException e) {}
+    }
+
+    /**
+     * Adds an Action to the list if it is legal
+     * @param possibleActions the list the Action is added to
+     * @param act the Action
+     * @param c the card drawn from the deck
+     * @return true if and only if the Action was added
+     * **/
+    private boolean addIfLegal(List<Action> possibleActions, Action act, Card c) {
+        if(legalAction(act, c)) {
+            possibleActions.add(act);
+            return true;
         }
-        return possibleActions;
+        return false;
     }
-}
\ No newline at end of file
+}
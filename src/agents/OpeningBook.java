@@ -0,0 +1,127 @@
+package agents;
+import loveletter.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The best first move of a round for each situation it can start in, built offline by the
+ * OpeningBookBuilder so the MCTS Agent answers the first move of a round without searching.
+ * Before the first move nothing has been played, so the situation is the number of players,
+ * the card held and the card drawn. The scores are left out, as the search plays to win the round.
+ * Each entry is an action code of a DecisionTable, with the target seat relative to the player,
+ * or 0 if the book has no move for the situation.
+ * The file is a magic number followed by one byte for each entry.
+ * */
+public class OpeningBook {
+    /** the number of entries in a book, one for each number of players, held card and drawn card **/
+    public static final int SIZE = 3 * 64;
+    /** the file the book is read from by default **/
+    public static final String DEFAULT_FILE = "opening.book";
+    private static final int MAGIC = 0x4F504E31; // "OPN1", the start of a book file
+
+    private final byte[] codes; // the action code of each situation
+
+    /**
+     * Constructs a book from the action codes
+     * @param codes the action code of each situation, of length SIZE, indexed by index
+     * **/
+    OpeningBook(byte[] codes) {
+        if (codes.length != SIZE) {
+            throw new IllegalArgumentException("An opening book has " + SIZE + " entries");
+        }
+        this.codes = codes;
+    }
+
+    /**
+     * returns the entry of a situation
+     * @param numPlayers the number of players, 2 to 4
+     * @param held the card in hand
+     * @param drawn the card drawn
+     * @return the index of the situation's entry
+     * **/
+    static int index(int numPlayers, Card held, Card drawn) {
+        return (numPlayers - 2) << 6 | held.ordinal() << 3 | drawn.ordinal();
+    }
+
+    /**
+     * returns the action code of a situation
+     * @param numPlayers the number of players, 2 to 4
+     * @param held the card in hand
+     * @param drawn the card drawn
+     * @return the action code, 0 if the book has no move
+     * **/
+    public int code(int numPlayers, Card held, Card drawn) {
+        return codes[index(numPlayers, held, drawn)] & 0xff;
+    }
+
+    /**
+     * Looks up the move of a player if it is the first move of the round
+     * @param state the player's State
+     * @param drawn the card the player has drawn
+     * @return the book move, or null if the round has started or the book has no move
+     * **/
+    public Action move(State state, Card drawn) {
+        for (int p = 0; p < state.numPlayers(); p++) {
+            if (state.getDiscards(p).hasNext()) {
+                return null;
+            }
+        }
+        int me = state.getPlayerIndex();
+        Card held = state.getCard(me);
+        return DecisionTable.action(code(state.numPlayers(), held, drawn), me, state.numPlayers(), held, drawn);
+    }
+
+    /**
+     * Writes the book to a file
+     * @param file the name of the file
+     * @throws IOException if the file cannot be written
+     * **/
+    public void save(String file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.write(codes);
+        }
+    }
+
+    /**
+     * Reads a book written by save
+     * @param file the name of the file
+     * @return the book
+     * @throws IOException if the file cannot be read or is not a complete book
+     * **/
+    public static OpeningBook load(String file) throws IOException {
+        byte[] codes = new byte[SIZE];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not an opening book");
+            }
+            in.readFully(codes);
+        }
+        return new OpeningBook(codes);
+    }
+
+    /**
+     * returns the book read from DEFAULT_FILE, shared by all the agents
+     * @return the default book, or null if there is no book file
+     * **/
+    public static OpeningBook defaultBook() {
+        return DefaultBook.BOOK;
+    }
+
+    // holder class, so the book is read once, when first used
+    private static class DefaultBook {
+        static final OpeningBook BOOK = load();
+
+        private static OpeningBook load() {
+            if (new java.io.File(DEFAULT_FILE).isFile()) {
+                try {
+                    return OpeningBook.load(DEFAULT_FILE);
+                } catch (IOException e) {/*play without a book*/}
+            }
+            return null;
+        }
+    }
+}
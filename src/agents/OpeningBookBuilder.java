@@ -0,0 +1,132 @@
+package agents;
+import loveletter.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the OpeningBook of the MCTS Agent with deep searches of every first move situation.
+ * Each situation is searched a number of times, each time from a different deal and with a long
+ * time limit and a large node budget, and the move chosen most often goes in the book.
+ * The situations are searched in parallel on all cores.
+ * Run with: java agents.OpeningBookBuilder [milliseconds per search] [searches] [threads] [file]
+ * */
+public class OpeningBookBuilder {
+    private static final int DEEP_NODES = 4 * MCTSAgent.DEFAULT_MAX_NODES; // the node budget of a deep search
+
+    /**
+     * Searches every situation and builds the book
+     * @param millis the time limit of each search
+     * @param searches the number of searches of each situation
+     * @param threads the number of threads the situations are split between
+     * @return the book
+     * @throws InterruptedException if the thread is interrupted while waiting for the searches
+     * **/
+    public static OpeningBook build(long millis, int searches, int threads) throws InterruptedException {
+        List<Integer> situations = new ArrayList<Integer>();
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int num = 2; num <= 4; num++) {
+            for (Card held : Card.values()) {
+                for (Card drawn : Card.values()) {
+                    if (held == drawn && held.count() < 2) {
+                        continue; // there is only one copy of the card
+                    }
+                    int players = num;
+                    situations.add(OpeningBook.index(num, held, drawn));
+                    tasks.add(() -> search(players, held, drawn, millis, searches));
+                }
+            }
+        }
+        byte[] codes = new byte[OpeningBook.SIZE];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                codes[situations.get(i)] = (byte) (int) results.get(i).get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("An opening search failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return new OpeningBook(codes);
+    }
+
+    /**
+     * Searches a situation a number of times and votes on the move
+     * @param num the number of players
+     * @param held the card held by the first player
+     * @param drawn the card drawn by the first player
+     * @param millis the time limit of each search
+     * @param searches the number of searches
+     * @return the action code of the move chosen most often, 0 if no search found a move
+     * **/
+    private static int search(int num, Card held, Card drawn, long millis, int searches) {
+        Random random = new Random(OpeningBook.index(num, held, drawn));
+        int[] votes = new int[256];
+        for (int s = 0; s < searches; s++) {
+            MCTSAgent agent = new MCTSAgent(DEEP_NODES);
+            agent.setTimeLimit(millis);
+            agent.newRound(deal(num, held, random));
+            Action act = agent.playCard(drawn);
+            if (act != null) {
+                votes[PolicyDistiller.actionCode(act, drawn, num)]++;
+            }
+        }
+        int best = 0;
+        for (int code = 1; code < votes.length; code++) {
+            if (votes[code] > votes[best]) {
+                best = code;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Deals rounds until the first player holds a card, and draws their first card.
+     * The card drawn need not be the one searched, as the search only sees the deck's size.
+     * @param num the number of players
+     * @param held the card the first player must hold
+     * @param random the random number generator for the deals
+     * @return the first player's State
+     * **/
+    private static State deal(int num, Card held, Random random) {
+        try {
+            while (true) {
+                State game = new State(random, new Agent[num]);
+                State player = game.playerState(0);
+                if (player.getCard(0) == held) {
+                    game.drawCard();
+                    return player;
+                }
+            }
+        } catch (IllegalActionException e) {
+            throw new IllegalStateException("Could not deal a round", e);
+        }
+    }
+
+    /**
+     * Builds the book and writes it to a file
+     * @param args the milliseconds per search (default 5000), the searches of each situation (8),
+     * the threads (the number of cores) and the file (OpeningBook.DEFAULT_FILE)
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if interrupted while searching
+     * **/
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 5000;
+        int searches = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        String file = args.length > 3 ? args[3] : OpeningBook.DEFAULT_FILE;
+
+        long start = System.nanoTime();
+        OpeningBook book = build(millis, searches, threads);
+        book.save(file);
+        System.out.printf("Opening book written to %s in %.0fs%n", file, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,202 @@
+package agents;
+import loveletter.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Distils the moves of the MCTS Agent into a DecisionTable for the DistilledAgent.
+ * Games of MCTS Agents, with 2, 3 and 4 players, are played on all cores with a short time limit
+ * for each move. Every move is recorded under the Knowledge Based Agent's decision key of the
+ * position, as an action code with the target seat relative to the mover. Each key of the table
+ * is given the code chosen most often for it, and keys never reached keep the Knowledge Based
+ * Agent's decision.
+ * Run with: java agents.PolicyDistiller [games] [milliseconds per move] [threads] [file] [minimum votes]
+ * */
+public class PolicyDistiller {
+    private static final PrintStream NO_OUTPUT = new PrintStream(OutputStream.nullOutputStream());
+
+    private final long millis; // the time limit of each MCTS move
+    private final Map<Long, Integer> votes = new HashMap<Long, Integer>(); // the count of each key and code
+    private long decisions; // the number of moves recorded
+
+    /**
+     * Constructs a distiller with no moves recorded
+     * @param millis the milliseconds the MCTS Agent searches each move for
+     * **/
+    public PolicyDistiller(long millis) {
+        this.millis = millis;
+    }
+
+    /**
+     * Plays games of MCTS Agents, recording their moves
+     * @param games the number of games
+     * @param threads the number of threads the games are split between
+     * @param seed the seed of the first game's deals, the others following it
+     * @throws InterruptedException if the thread is interrupted while waiting for the games
+     * **/
+    public void record(int games, int threads, long seed) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Map<Long, Integer>>> tasks = new ArrayList<Callable<Map<Long, Integer>>>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                tasks.add(() -> {
+                    // each thread counts its own votes, which are merged when its games are done
+                    Map<Long, Integer> counts = new HashMap<Long, Integer>();
+                    for (int g = first; g < games; g += threads) {
+                        Agent[] agents = new Agent[2 + g % 3];
+                        for (int i = 0; i < agents.length; i++) {
+                            agents[i] = new Recorder(millis, counts);
+                        }
+                        new LoveLetter(seed + g, NO_OUTPUT, true).playGame(agents);
+                    }
+                    return counts;
+                });
+            }
+            for (Future<Map<Long, Integer>> result : pool.invokeAll(tasks)) {
+                for (Map.Entry<Long, Integer> entry : result.get().entrySet()) {
+                    votes.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                    decisions += entry.getValue();
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A distillation game failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Builds the distilled table: the code chosen most often for each key recorded often enough,
+     * and the code of a fallback table for the others, so a key seen once does not override
+     * the fallback with a move the search may have chosen by chance
+     * @param fallback the table giving the decisions of the keys not recorded often enough
+     * @param minVotes the number of times the code must have been chosen for the key
+     * @return the distilled table
+     * **/
+    public DecisionTable distil(DecisionTable fallback, int minVotes) {
+        byte[] codes = new byte[DecisionTable.SIZE];
+        for (int key = 0; key < DecisionTable.SIZE; key++) {
+            codes[key] = (byte) fallback.code(key);
+        }
+        int[] best = new int[DecisionTable.SIZE]; // the votes for the code chosen so far, for the recorded keys
+        for (Map.Entry<Long, Integer> entry : votes.entrySet()) {
+            int key = (int) (entry.getKey() >>> 8);
+            if (entry.getValue() >= minVotes && entry.getValue() > best[key]) {
+                best[key] = entry.getValue();
+                codes[key] = (byte) (entry.getKey() & 0xff);
+            }
+        }
+        return new DecisionTable(codes);
+    }
+
+    /**
+     * returns the number of moves recorded
+     * @return the number of moves
+     * **/
+    public long decisions() {
+        return decisions;
+    }
+
+    /**
+     * returns the fraction of the recorded moves for which a table gives the same action code
+     * @param table the table
+     * @return the fraction of the moves that agree with the table
+     * **/
+    public double agreement(DecisionTable table) {
+        long agree = 0;
+        for (Map.Entry<Long, Integer> entry : votes.entrySet()) {
+            if (table.code((int) (entry.getKey() >>> 8)) == (entry.getKey() & 0xff)) {
+                agree += entry.getValue();
+            }
+        }
+        return decisions == 0 ? 0 : (double) agree / decisions;
+    }
+
+    /**
+     * Packs a move into an action code of a DecisionTable
+     * @param act the move
+     * @param drawn the card drawn by the mover
+     * @param numPlayers the number of players in the game
+     * @return the action code, with the target seat relative to the mover
+     * **/
+    static int actionCode(Action act, Card drawn, int numPlayers) {
+        int seat = act.target() < 0 ? 0 : (act.target() - act.player() + numPlayers) % numPlayers;
+        return DecisionTable.code(act.card() == drawn, seat, false, act.card() == Card.GUARD ? act.guess() : null);
+    }
+
+    /**
+     * An agent which plays the moves of an MCTS Agent, counting each under its decision key
+     * */
+    private static class Recorder implements Agent {
+        private final MCTSAgent search = new MCTSAgent();
+        private final KnowledgeBasedAgent keys = new KnowledgeBasedAgent(); // tracks the knowledge the key is made of
+        private final Map<Long, Integer> counts;
+        private State current;
+        private int myIndex;
+
+        Recorder(long millis, Map<Long, Integer> counts) {
+            search.setTimeLimit(millis);
+            this.counts = counts;
+        }
+
+        public void newRound(State start) {
+            current = start;
+            myIndex = current.getPlayerIndex();
+            search.newRound(start);
+            keys.newRound(start);
+        }
+
+        public void see(Action act, State results) {
+            current = results;
+            search.see(act, results);
+            keys.see(act, results);
+        }
+
+        public Action playCard(Card c) {
+            Action act = search.playCard(c);
+            if (act != null) {
+                long key = keys.decisionKey(c, current.getCard(myIndex));
+                counts.merge(key << 8 | actionCode(act, c, current.numPlayers()), 1, Integer::sum);
+            }
+            return act;
+        }
+    }
+
+    /**
+     * Distils the MCTS Agent into a table and writes it to a file
+     * @param args the games (default 300), the milliseconds per move (50), the threads (the number of cores)
+     * the file (DistilledAgent.DEFAULT_FILE) and the votes a move needs to replace the rules (5)
+     * @throws IOException if the file cannot be written
+     * @throws InterruptedException if interrupted while the games are played
+     * **/
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        String file = args.length > 3 ? args[3] : DistilledAgent.DEFAULT_FILE;
+        int minVotes = args.length > 4 ? Integer.parseInt(args[4]) : 5;
+
+        PolicyDistiller distiller = new PolicyDistiller(millis);
+        long start = System.nanoTime();
+        distiller.record(games, threads, 0);
+        DecisionTable fallback = DecisionTable.defaultTable();
+        DecisionTable table = distiller.distil(fallback, minVotes);
+        table.save(file, DecisionTable.DISTILLED);
+        System.out.printf("%d moves recorded in %d games in %.0fs, %d distinct keys and moves%n",
+            distiller.decisions(), games, (System.nanoTime() - start) / 1e9, distiller.votes.size());
+        System.out.printf("The distilled table agrees with %.1f%% of the moves, the rules with %.1f%%%n",
+            100 * distiller.agreement(table), 100 * distiller.agreement(fallback));
+        System.out.println("Distilled table written to " + file);
+    }
+}
@@ -11,6 +11,7 @@ public class RandomAgent implements Agent{
   private Random rand;
   private State current;
   private int myIndex;
+  private final int[] targets = new int[4];//scratch array of the legal targets of a card
 
   //0 place default constructor
   public RandomAgent(){
@@ -42,48 +43,87 @@ public class RandomAgent implements Agent{
   }
 
   /**
-   * Perform an action after drawing a card from the deck
+   * Perform an action after drawing a card from the deck.
+   * Every legal combination of card and target is counted up front and one is drawn directly,
+   * which gives the same distribution as drawing random actions until one is legal.
+   * A card without a target counts once for each player, as the target drawn for it was ignored,
+   * and the Guard's guess is drawn separately, as any guess is legal.
    * @param c the card drawn from the deck
    * @return the action the agent chooses to perform
-   * @throws IllegalActionException when the Action produced is not legal.
    * */
   public Action playCard(Card c){
-    Action act = null;
-    Card play;
-    while(!current.legalAction(act, c)){
-      if(rand.nextDouble()<0.5) play= c;
-      else play = current.getCard(myIndex);
-      int target = rand.nextInt(current.numPlayers());
-      try{
-        switch(play){
-          case GUARD:
-            act = Action.playGuard(myIndex, target, Card.values()[rand.nextInt(7)+1]);
-            break;
-          case PRIEST:
-            act = Action.playPriest(myIndex, target);
-            break;
-          case BARON:  
-            act = Action.playBaron(myIndex, target);
-            break;
-          case HANDMAID:
-            act = Action.playHandmaid(myIndex);
-            break;
-          case PRINCE:  
-            act = Action.playPrince(myIndex, target);
-            break;
-          case KING:
-            act = Action.playKing(myIndex, target);
-            break;
-          case COUNTESS:
-            act = Action.playCountess(myIndex);
-            break;
-          default:
-            act = null;//never play princess
-        }
-      }catch(IllegalActionException e){/*do nothing*/}
+    Card inHand = current.getCard(myIndex);
+    int drawnChoices = choices(c, inHand);
+    int total = drawnChoices + choices(inHand, c);
+    if(total==0) return null;
+    int choice = rand.nextInt(total);
+    Card play = c;
+    if(choice>=drawnChoices){
+      play = inHand;
+      choice -= drawnChoices;
+    }
+    legalTargets(play);
+    try{
+      switch(play){
+        case GUARD:
+          return Action.playGuard(myIndex, targets[choice], Card.values()[rand.nextInt(7)+1]);
+        case PRIEST:
+          return Action.playPriest(myIndex, targets[choice]);
+        case BARON:
+          return Action.playBaron(myIndex, targets[choice]);
+        case HANDMAID:
+          return Action.playHandmaid(myIndex);
+        case PRINCE:
+          return Action.playPrince(myIndex, targets[choice]);
+        case KING:
+          return Action.playKing(myIndex, targets[choice]);
+        case COUNTESS:
+          return Action.playCountess(myIndex);
+        default:
+          return null;//never play princess
+      }
+    }catch(IllegalActionException e){
+      return null;//unreachable, the targets are legal
     }
-    return act;
   }
-}
 
+  /**
+   * Counts the legal ways of playing a card
+   * @param play the card to be played
+   * @param other the card kept
+   * @return the number of legal targets, or the number of players for a card without a target
+   * */
+  private int choices(Card play, Card other){
+    switch(play){
+      case PRINCESS:
+        return 0;//never play princess
+      case HANDMAID:
+      case COUNTESS:
+        return current.numPlayers();
+      case PRINCE:
+      case KING:
+        if(other==Card.COUNTESS) return 0;//must play the countess
+        return legalTargets(play);
+      default:
+        return legalTargets(play);
+    }
+  }
 
+  /**
+   * Fills the targets array with the players a card can legally target
+   * @param play the card to be played
+   * @return the number of legal targets
+   * */
+  private int legalTargets(Card play){
+    boolean allHandmaid = current.allHandmaid(myIndex);
+    int count = 0;
+    for(int i = 0; i<current.numPlayers(); i++){
+      if(i==myIndex){
+        if(play==Card.PRINCE) targets[count++] = i;//a player can always target themselves with the prince
+      }
+      else if(!current.eliminated(i) && (!current.handmaid(i) || (allHandmaid && play!=Card.PRINCE)))
+        targets[count++] = i;
+    }
+    return count;
+  }
+}
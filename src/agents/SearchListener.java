@@ -0,0 +1,13 @@
+package agents;
+
+/**
+ * A callback for the MCTS Agent, which is given a summary after every move it searches
+ * */
+public interface SearchListener {
+
+    /**
+     * Method called when the agent has finished the search for a move
+     * @param summary the summary of the search
+     * **/
+    public void moveSearched(MoveSummary summary);
+}
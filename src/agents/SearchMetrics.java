@@ -0,0 +1,143 @@
+package agents;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the searches performed by an MCTS Agent.
+ * The agent records one MoveSummary per move, plus the length of every random playout,
+ * and the totals can be published through JMX with register().
+ * */
+public class SearchMetrics implements SearchMetricsMXBean {
+    private static final AtomicInteger ids = new AtomicInteger(); // makes the JMX names unique
+
+    private long moves; // number of moves searched
+    private long iterations; // total iterations over all moves
+    private long selectNanos, expandNanos, simulateNanos, backpropNanos; // total time of each phase
+    private long maxDepth; // deepest node reached by the selection
+    private Histogram iterationsPerMove = new Histogram();
+    private Histogram treeSize = new Histogram();
+    private Histogram moveMillis = new Histogram();
+    private Histogram allocatedKB = new Histogram();
+    private volatile Histogram playoutLength = new Histogram(); // updated for every playout, without locking, and swapped by reset
+    private ObjectName name; // the name the metrics are registered under, or null
+
+    /**
+     * Records the number of turns in a random playout
+     * @param turns the number of turns played
+     * **/
+    public void recordPlayout(int turns) {
+        playoutLength.record(turns);
+    }
+
+    /**
+     * Adds the summary of a move to the totals
+     * @param summary the summary of the search for the move
+     * **/
+    public synchronized void recordMove(MoveSummary summary) {
+        moves++;
+        iterations += summary.iterations();
+        selectNanos += summary.selectNanos();
+        expandNanos += summary.expandNanos();
+        simulateNanos += summary.simulateNanos();
+        backpropNanos += summary.backpropNanos();
+        maxDepth = Math.max(maxDepth, summary.maxDepth());
+        iterationsPerMove.record(summary.iterations());
+        treeSize.record(summary.treeSize());
+        moveMillis.record(summary.elapsedNanos() / 1000000);
+        if (summary.allocatedBytes() >= 0) {
+            allocatedKB.record(summary.allocatedBytes() / 1024);
+        }
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, so they can be read by JMX clients
+     * such as jconsole. Does nothing if they are already registered.
+     * @return the name the metrics are registered under
+     * @throws IllegalStateException if the registration fails
+     * **/
+    public synchronized ObjectName register() {
+        if (name == null) {
+            try {
+                ObjectName objectName = new ObjectName("agents:type=MCTSAgent,id=" + ids.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+                name = objectName;
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register the search metrics", e);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they are registered
+     * **/
+    public synchronized void unregister() {
+        if (name != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {/*already unregistered, do nothing*/}
+            name = null;
+        }
+    }
+
+    /**
+     * Gives the bytes allocated so far by the current thread, if the JVM supports it
+     * @return the bytes allocated by the current thread, or -1 if unavailable
+     * **/
+    static long currentThreadAllocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+            if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public synchronized long getMoves() {return moves;}
+
+    public synchronized long getIterations() {return iterations;}
+
+    public synchronized double getMeanIterationsPerMove() {return iterationsPerMove.mean();}
+
+    public synchronized long getIterationsPerMoveP5() {return iterationsPerMove.percentile(5);}
+
+    public synchronized long getMaxTreeSize() {return treeSize.max();}
+
+    public synchronized double getMeanTreeSize() {return treeSize.mean();}
+
+    public synchronized long getMaxDepth() {return maxDepth;}
+
+    public double getMeanPlayoutLength() {return playoutLength.mean();}
+
+    public synchronized long getSelectMillis() {return selectNanos / 1000000;}
+
+    public synchronized long getExpandMillis() {return expandNanos / 1000000;}
+
+    public synchronized long getSimulateMillis() {return simulateNanos / 1000000;}
+
+    public synchronized long getBackpropMillis() {return backpropNanos / 1000000;}
+
+    public synchronized long getMoveMillisP99() {return moveMillis.percentile(99);}
+
+    public synchronized double getMeanAllocatedKBPerMove() {
+        return allocatedKB.count() == 0 ? -1 : allocatedKB.mean();
+    }
+
+    public synchronized void reset() {
+        moves = 0;
+        iterations = 0;
+        selectNanos = expandNanos = simulateNanos = backpropNanos = 0;
+        maxDepth = 0;
+        iterationsPerMove = new Histogram();
+        treeSize = new Histogram();
+        moveMillis = new Histogram();
+        allocatedKB = new Histogram();
+        playoutLength = new Histogram();
+    }
+}
@@ -0,0 +1,52 @@
+package agents;
+
+/**
+ * The management interface of the search metrics of an MCTS Agent, published through JMX
+ * */
+public interface SearchMetricsMXBean {
+
+    /** @return the number of moves searched **/
+    public long getMoves();
+
+    /** @return the total number of iterations over all moves **/
+    public long getIterations();
+
+    /** @return the mean number of iterations per move **/
+    public double getMeanIterationsPerMove();
+
+    /** @return the 5th percentile (upper bound) of the iterations per move **/
+    public long getIterationsPerMoveP5();
+
+    /** @return the largest tree at the end of a move **/
+    public long getMaxTreeSize();
+
+    /** @return the mean tree size at the end of a move **/
+    public double getMeanTreeSize();
+
+    /** @return the deepest node reached by the selection **/
+    public long getMaxDepth();
+
+    /** @return the mean number of turns in a random playout **/
+    public double getMeanPlayoutLength();
+
+    /** @return the total milliseconds spent in the selection phase **/
+    public long getSelectMillis();
+
+    /** @return the total milliseconds spent in the expansion phase **/
+    public long getExpandMillis();
+
+    /** @return the total milliseconds spent in the simulation phase **/
+    public long getSimulateMillis();
+
+    /** @return the total milliseconds spent in the backpropagation phase **/
+    public long getBackpropMillis();
+
+    /** @return the 99th percentile (upper bound) of the milliseconds per move **/
+    public long getMoveMillisP99();
+
+    /** @return the mean kilobytes allocated per move, or -1 if unavailable **/
+    public double getMeanAllocatedKBPerMove();
+
+    /** Resets all the counters and histograms **/
+    public void reset();
+}
@@ -0,0 +1,77 @@
+package agents;
+import java.util.List;
+
+/**
+ * The UCB selection step of the MCTS Agent, computed over primitive arrays.
+ * The children's visits and scores are gathered into arrays, the parent's log is computed
+ * once, and the UCB scores of all the children are evaluated in a branch-free loop
+ * the JIT compiler can vectorise.
+ * A kernel owns scratch arrays, so each searching thread should use its own instance,
+ * while the static select method has no state and can be shared.
+ * */
+public class UCBKernel {
+    private final double exploration; // the exploration constant of the UCB formula
+    private int[] visits = new int[16]; // visits of each child
+    private double[] scores = new double[16]; // total score of each child
+    private double[] values = new double[16]; // UCB score of each child
+
+    /**
+     * Constructs a kernel with the given exploration constant
+     * @param exploration the weight of the exploration term of the UCB formula
+     * **/
+    public UCBKernel(double exploration) {
+        this.exploration = exploration;
+    }
+
+    /**
+     * Finds the child with the highest UCB score
+     * @param parent the node whose children are compared, which must have at least one child
+     * @return the child with the highest UCB score
+     * **/
+    public Node selectChild(Node parent) {
+        List<Node> children = parent.getChildren();
+        int n = children.size();
+        if (visits.length < n) {
+            visits = new int[n];
+            scores = new double[n];
+            values = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            Node child = children.get(i);
+            visits[i] = child.getVisitCount();
+            scores[i] = child.getWinScore();
+        }
+        return children.get(select(visits, scores, values, n, parent.getVisitCount(), exploration));
+    }
+
+    /**
+     * Finds the index of the child with the highest UCB score.
+     * A child which has never been visited is always selected first.
+     * @param visits the number of visits of each child
+     * @param scores the total score of each child
+     * @param values scratch array for the UCB scores, at least n long
+     * @param n the number of children
+     * @param parentVisits the number of visits of the parent
+     * @param exploration the weight of the exploration term
+     * @return the index of the first child with the highest UCB score
+     * **/
+    public static int select(int[] visits, double[] scores, double[] values, int n, int parentVisits, double exploration) {
+        for (int i = 0; i < n; i++) {
+            if (visits[i] == 0) {
+                return i;
+            }
+        }
+        double logParent = Math.log(parentVisits);
+        for (int i = 0; i < n; i++) {
+            double inverse = 1.0 / visits[i];
+            values[i] = scores[i] * inverse + exploration * Math.sqrt(logParent * inverse);
+        }
+        int best = 0;
+        for (int i = 1; i < n; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
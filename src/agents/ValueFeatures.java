@@ -0,0 +1,63 @@
+package agents;
+import loveletter.*;
+
+/**
+ * Extracts the features of a NodeState for a player, the inputs of a LinearValueFunction.
+ * The features are: a bias, the player's card (one-hot, and again weighted by how far the deck
+ * has run down), the fraction of each card not yet discarded, the opponents still in the round
+ * and protected by the Handmaid, the deck size, the scores, who knows whose card, the number of
+ * players, and the player's card against the best card of the other players.
+ * The last is only known in a determinization, where it stands in for the showdown a playout reaches.
+ * */
+public class ValueFeatures {
+    /** the number of features **/
+    public static final int SIZE = 38;
+
+    /**
+     * Fills an array with the features of a NodeState for a player still in the round
+     * @param state the NodeState
+     * @param p the index of the player
+     * @param features the array of length SIZE to be filled
+     * **/
+    public static void extract(NodeState state, int p, double[] features) {
+        java.util.Arrays.fill(features, 0);
+        int num = state.numPlayers();
+        Card held = state.heldCard(p);
+        double progress = 1 - state.deckSize() / 16.0;
+        features[0] = 1;
+        features[1 + held.ordinal()] = 1;
+        for (Card c : Card.values()) {
+            features[9 + c.ordinal()] = (double) state.unseenCount(c) / c.count();
+        }
+        features[17 + held.ordinal()] = progress;
+
+        int alive = 0, protectedOpponents = 0, bestOpponent = 0, bestScore = 0;
+        boolean knowsOpponent = false, isKnown = false;
+        for (int q = 0; q < num; q++) {
+            if (q == p) {
+                continue;
+            }
+            bestScore = Math.max(bestScore, state.score(q));
+            if (state.eliminated(q)) {
+                continue;
+            }
+            alive++;
+            protectedOpponents += state.handmaid(q) ? 1 : 0;
+            bestOpponent = Math.max(bestOpponent, state.heldCard(q).value());
+            knowsOpponent |= state.knows(p, q);
+            isKnown |= state.knows(q, p);
+        }
+        int threshold = num == 4 ? 4 : num == 3 ? 5 : 7;
+        features[25] = (double) alive / (num - 1);
+        features[26] = state.handmaid(p) ? 1 : 0;
+        features[27] = (double) protectedOpponents / (num - 1);
+        features[28] = state.deckSize() / 16.0;
+        features[29] = (double) state.score(p) / threshold;
+        features[30] = (double) bestScore / threshold;
+        features[31] = knowsOpponent ? 1 : 0;
+        features[32] = isKnown ? 1 : 0;
+        features[33 + num - 2] = 1;
+        features[36] = (held.value() - bestOpponent) / 7.0;
+        features[37] = features[36] * progress;
+    }
+}
@@ -0,0 +1,190 @@
+package agents;
+import loveletter.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Trains the weights of a LinearValueFunction by TD(lambda) on rounds of random self-play,
+ * with 2, 3 and 4 players. After every move each player still in the round moves their
+ * estimate of the previous position towards their estimate of the new one, along an eligibility
+ * trace of the features of the positions before it. A player's last estimate moves towards 1 if
+ * they win the round and 0 if they are eliminated or lose. The updates follow the gradient of the
+ * log loss of the logistic output, so the trained value is a calibrated chance of winning.
+ * The rounds are played as the MCTS playouts are, so the value is an estimate of a playout's result.
+ * Each round starts from random scores below the threshold that wins the game, as rounds are
+ * played at every point of a game, so the score features see the values they meet in a search.
+ * Run with: java agents.ValueTrainer [rounds] [lambda] [rate] [file]
+ * */
+public class ValueTrainer {
+    private static final int TEST_ROUNDS = 20000; // the held out rounds the loss is measured on
+    private static final int REPORTS = 10; // the number of times the loss is reported
+
+    private final double lambda; // the decay of the eligibility traces
+    private final double rate; // the initial learning rate, decayed linearly to a tenth
+    private final double[] weights = new double[ValueFeatures.SIZE];
+    private final double[][] traces = new double[4][ValueFeatures.SIZE]; // the eligibility trace of each player
+    private final double[] previous = new double[4]; // each player's estimate of the last position
+    private final boolean[] active = new boolean[4]; // whether a player's estimates are still being learned
+    private final double[] features = new double[ValueFeatures.SIZE];
+
+    /**
+     * Constructs a trainer with all the weights 0
+     * @param lambda the decay of the eligibility traces, between 0 and 1
+     * @param rate the learning rate
+     * **/
+    public ValueTrainer(double lambda, double rate) {
+        if (lambda < 0 || lambda > 1 || rate <= 0) {
+            throw new IllegalArgumentException("lambda must be between 0 and 1 and the rate positive");
+        }
+        this.lambda = lambda;
+        this.rate = rate;
+    }
+
+    /**
+     * Trains on a number of rounds
+     * @param rounds the number of rounds
+     * @param random the random number generator for the deals and the play
+     * @param progress the fraction of the training done before these rounds, which decays the learning rate
+     * @param share the fraction of the training these rounds are
+     * **/
+    public void train(int rounds, Random random, double progress, double share) {
+        for (int r = 0; r < rounds; r++) {
+            trainRound(random, rate * (1 - 0.9 * (progress + share * r / rounds)));
+        }
+    }
+
+    /**
+     * Plays one round, updating the weights after every move
+     * @param random the random number generator for the deal and the play
+     * @param alpha the learning rate
+     * **/
+    private void trainRound(Random random, double alpha) {
+        int num = 2 + random.nextInt(3);
+        NodeState state = new NodeState(random, new Agent[num]);
+        dealScores(state, random);
+        for (int p = 0; p < num; p++) {
+            ValueFeatures.extract(state, p, traces[p]);
+            previous[p] = value(traces[p]);
+            active[p] = true;
+        }
+        while (!state.roundOver()) {
+            state.randomPlay();
+            for (int p = 0; p < num; p++) {
+                if (!active[p]) {
+                    continue;
+                }
+                double target;
+                if (state.roundOver() || state.eliminated(p)) {
+                    target = state.roundWinner() == p ? 1 : 0;
+                    active[p] = false;
+                } else {
+                    ValueFeatures.extract(state, p, features);
+                    target = value(features);
+                }
+                double error = target - previous[p];
+                for (int i = 0; i < weights.length; i++) {
+                    weights[i] += alpha * error * traces[p][i];
+                }
+                if (active[p]) {
+                    previous[p] = value(features);
+                    for (int i = 0; i < weights.length; i++) {
+                        traces[p][i] = lambda * traces[p][i] + features[i];
+                    }
+                }
+            }
+        }
+    }
+
+    // gives each player a random score below the threshold that wins the game
+    private static void dealScores(NodeState state, Random random) {
+        int num = state.numPlayers();
+        int threshold = num == 4 ? 4 : num == 3 ? 5 : 7;
+        for (int p = 0; p < num; p++) {
+            state.setScore(p, random.nextInt(threshold));
+        }
+    }
+
+    // the value of the current weights, without copying them into a LinearValueFunction
+    private double value(double[] x) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            sum += weights[i] * x[i];
+        }
+        return 1 / (1 + Math.exp(-sum));
+    }
+
+    /**
+     * Measures how well a value function predicts the winners of rounds of random self-play
+     * @param function the value function
+     * @param rounds the number of rounds
+     * @param seed the seed of the rounds, the same seed giving the same rounds
+     * @return the mean log loss of the estimates of every player still in the round after every move,
+     * and the mean log loss of an even chance for each of them
+     * **/
+    public static double[] logLoss(LinearValueFunction function, int rounds, long seed) {
+        Random random = new Random(seed);
+        double[] x = new double[ValueFeatures.SIZE];
+        double loss = 0, evenLoss = 0;
+        long count = 0;
+        for (int r = 0; r < rounds; r++) {
+            int num = 2 + random.nextInt(3);
+            NodeState state = new NodeState(random, new Agent[num]);
+            dealScores(state, random);
+            List<NodeState> positions = new ArrayList<NodeState>();
+            while (!state.roundOver()) {
+                positions.add(new NodeState(state));
+                state.randomPlay();
+            }
+            int winner = state.roundWinner();
+            for (NodeState position : positions) {
+                int alive = 0;
+                for (int p = 0; p < num; p++) {
+                    alive += position.eliminated(p) ? 0 : 1;
+                }
+                for (int p = 0; p < num; p++) {
+                    if (!position.eliminated(p)) {
+                        double v = Math.min(1 - 1e-9, Math.max(1e-9, function.value(position, p, x)));
+                        boolean won = p == winner;
+                        loss -= Math.log(won ? v : 1 - v);
+                        evenLoss -= Math.log(won ? 1.0 / alive : 1 - 1.0 / alive);
+                        count++;
+                    }
+                }
+            }
+        }
+        return new double[] {loss / count, evenLoss / count};
+    }
+
+    /**
+     * Trains a value function from zero weights and writes it to a file
+     * @param args the rounds (default 2000000), lambda (0.7), the learning rate (0.005)
+     * and the file the weights are written to (value.weights)
+     * @throws IOException if the file cannot be written
+     * **/
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        double lambda = args.length > 1 ? Double.parseDouble(args[1]) : 0.7;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 0.005;
+        Path file = Paths.get(args.length > 3 ? args[3] : "value.weights");
+
+        ValueTrainer trainer = new ValueTrainer(lambda, rate);
+        Random random = new Random(1);
+        long start = System.nanoTime();
+        for (int phase = 0; phase < REPORTS; phase++) {
+            int share = rounds / REPORTS + (phase < rounds % REPORTS ? 1 : 0);
+            trainer.train(share, random, (double) phase / REPORTS, 1.0 / REPORTS);
+            double[] loss = logLoss(new LinearValueFunction(trainer.weights), TEST_ROUNDS, -1);
+            System.out.printf("%d rounds, log loss %.4f (even chances %.4f), %.0f rounds/s%n",
+                rounds / REPORTS * (phase + 1), loss[0], loss[1],
+                rounds / REPORTS * (phase + 1) / ((System.nanoTime() - start) / 1e9));
+        }
+        LinearValueFunction trained = new LinearValueFunction(trainer.weights);
+        trained.save(file);
+        System.out.println("Weights written to " + file + ":");
+        System.out.println(trained);
+    }
+}
@@ -0,0 +1,122 @@
+package loveletter;
+
+/**
+ * Actions coded as ints, for FastAgents, which play without creating Action objects.
+ * The player is not coded, as it is always the player whose turn it is.
+ * Bits 0-2 hold the ordinal of the card, bits 3-5 the target plus one (0 for no target)
+ * and bits 6-9 the ordinal of the guess plus one (0 for no guess).
+ * NONE codes no action, which is illegal, as is an Action that is null.
+ * */
+public final class ActionCode{
+
+  public static final int NONE = -1;
+  private static final Card[] CARDS = Card.values();//values() copies the array each call
+
+  private ActionCode(){}
+
+  /**
+   * Codes an action
+   * @param card the card played
+   * @param target the player targetted, or -1 for a card without a target
+   * @param guess the guessed card of a Guard, or null otherwise
+   * @return the action code
+   * **/
+  public static int code(Card card, int target, Card guess){
+    return code(card.ordinal(), target, guess==null?-1:guess.ordinal());
+  }
+
+  /**
+   * Codes an action from card ordinals
+   * @param card the ordinal of the card played
+   * @param target the player targetted, or -1 for a card without a target
+   * @param guess the ordinal of the guessed card of a Guard, or -1 otherwise
+   * @return the action code
+   * **/
+  public static int code(int card, int target, int guess){
+    return card | (target+1)<<3 | (guess+1)<<6;
+  }
+
+  /**
+   * Codes an action
+   * @param act the action, or null for none
+   * @return the action code, or NONE for a null action
+   * **/
+  public static int code(Action act){
+    return act==null ? NONE : code(act.card(), act.target(), act.guess());
+  }
+
+  /**the card of an action code
+   * @param code the action code
+   * @return the card played
+   * **/
+  public static Card card(int code){return CARDS[code&7];}
+
+  /**the target of an action code
+   * @param code the action code
+   * @return the player targetted, or -1 for a card without a target
+   * **/
+  public static int target(int code){return (code>>3&7)-1;}
+
+  /**the guess of an action code
+   * @param code the action code
+   * @return the guessed card of a Guard, or null otherwise
+   * **/
+  public static Card guess(int code){
+    int g = code>>6&15;
+    return g==0 || g>8 ? null : CARDS[g-1];
+  }
+
+  /**
+   * Checks an action code against the rules the Action class enforces:
+   * the Guard, Priest, Baron and King must target another player in the game,
+   * the Prince must target a player in the game, the other cards must not have a target,
+   * and only the Guard guesses, a card other than the Guard.
+   * @param player the player performing the action
+   * @param code the action code
+   * @param numPlayers the number of players in the game
+   * @throws IllegalActionException if the code breaks any of these rules.
+   * **/
+  public static void check(int player, int code, int numPlayers) throws IllegalActionException{
+    if(code<0 || code>=1<<10) throw new IllegalActionException("No action coded");
+    Card c = card(code);
+    int t = target(code);
+    Card g = guess(code);
+    if(c==Card.GUARD){
+      if(g==null || g==Card.GUARD) throw new IllegalActionException("Player must guess a card other than the guard");
+    }
+    else if((code>>6)!=0) throw new IllegalActionException("Only the guard guesses a card");
+    switch(c){
+      case HANDMAID: case COUNTESS: case PRINCESS:
+        if(t!=-1) throw new IllegalActionException("The card has no target");
+        return;
+      case PRINCE:
+        if(t==-1 || t>=numPlayers) throw new IllegalActionException("Target must be specified");
+        return;
+      default:
+        if(t==-1 || t>=numPlayers) throw new IllegalActionException("Target must be specified");
+        if(t==player) throw new IllegalActionException("Player cannot target themself");
+    }
+  }
+
+  /**
+   * Creates the Action of an action code
+   * @param player the player performing the action
+   * @param code the action code
+   * @return the action
+   * @throws IllegalActionException if the code is NONE or breaks the rules of the Action class
+   * **/
+  public static Action action(int player, int code) throws IllegalActionException{
+    if(code<0) throw new IllegalActionException("No action coded");
+    int t = target(code);
+    switch(card(code)){
+      case GUARD: return Action.playGuard(player, t, guess(code));
+      case PRIEST: return Action.playPriest(player, t);
+      case BARON: return Action.playBaron(player, t);
+      case HANDMAID: return Action.playHandmaid(player);
+      case PRINCE: return Action.playPrince(player, t);
+      case KING: return Action.playKing(player, t);
+      case COUNTESS: return Action.playCountess(player);
+      default: return Action.playPrincess(player);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package loveletter;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * Hosts agents for RemoteAgents in other processes, speaking the AgentProtocol.
+ * Each connection gets a new agent, with a State rebuilt from the views the engine sends,
+ * which is updated in place as the round goes on, as a State in the engine would be.
+ * One thread serves every connection with a selector, calling the agents as their messages arrive,
+ * so a slow agent delays the others; run a host for each agent that needs a core to itself.
+ * The host listens on the loopback address unless another address is given.
+ * */
+public class AgentHost implements Runnable, AutoCloseable{
+
+  private final ServerSocketChannel server;
+  private final Selector selector;
+  private final Supplier<Agent> agents; // makes the agent of each connection
+
+  /**
+   * Starts listening for connections; run serves them.
+   * @param address the address to listen on, e.g. on the loopback address, port 0 for any free port
+   * @param agents makes the agent of each connection
+   * @throws IOException if the address cannot be bound
+   * **/
+  public AgentHost(InetSocketAddress address, Supplier<Agent> agents) throws IOException{
+    this.agents = agents;
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    server.bind(address);
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * @return the address the host listens on
+   * @throws IOException if the host is closed
+   * **/
+  public InetSocketAddress address() throws IOException{
+    return (InetSocketAddress)server.getLocalAddress();
+  }
+
+  /**
+   * Serves the connections until the host is closed
+   * **/
+  public void run(){
+    try{
+      while(selector.isOpen()){
+        selector.select();
+        if(!selector.isOpen()) break;
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while(keys.hasNext()){
+          SelectionKey key = keys.next();
+          keys.remove();
+          if(!key.isValid()) continue;
+          if(key.isAcceptable()){
+            accept();
+          }else{
+            Connection c = (Connection)key.attachment();
+            try{
+              if(key.isReadable()) c.read();
+              if(key.isValid() && key.isWritable()) c.write();
+            }catch(IOException | RuntimeException e){
+              c.close(); // the engine has gone, or the agent failed
+            }
+          }
+        }
+      }
+    }catch(IOException | java.nio.channels.ClosedSelectorException e){/*the host is closed*/}
+  }
+
+  /**
+   * Stops serving, closing every connection.
+   * **/
+  public void close(){
+    try{
+      for(SelectionKey key: selector.keys()) key.channel().close();
+      selector.close();
+    }catch(IOException e){/*closing anyway*/}
+  }
+
+  // accepts a new connection and gives it an agent
+  private void accept() throws IOException{
+    SocketChannel channel = server.accept();
+    if(channel==null) return;
+    channel.configureBlocking(false);
+    channel.setOption(java.net.StandardSocketOptions.TCP_NODELAY, true);
+    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+    key.attach(new Connection(key, agents.get()));
+  }
+
+  /**
+   * A connection to a RemoteAgent and the agent it plays for
+   * */
+  private static class Connection{
+    private final SelectionKey key;
+    private final Agent agent;
+    private State state; // the agent's State of the current round
+    private final ByteBuffer in = ByteBuffer.allocate(1<<16); // received bytes not yet a whole frame
+    private final ByteBuffer out = ByteBuffer.allocate(1<<10); // answers not yet sent
+
+    Connection(SelectionKey key, Agent agent){
+      this.key = key;
+      this.agent = agent;
+    }
+
+    // reads what has arrived and handles each whole frame
+    void read() throws IOException{
+      if(((SocketChannel)key.channel()).read(in)<0){
+        close();
+        return;
+      }
+      in.flip();
+      while(in.remaining()>=AgentProtocol.HEADER && in.remaining()>=AgentProtocol.HEADER+in.getInt(in.position())){
+        int length = in.getInt();
+        byte type = in.get();
+        int end = in.position()+length;
+        handle(type);
+        in.position(end);
+      }
+      in.compact();
+      write();
+    }
+
+    // calls the agent for a message
+    private void handle(byte type){
+      switch(type){
+        case AgentProtocol.NEW_ROUND:
+          state = new State(in);
+          agent.newRound(state);
+          break;
+        case AgentProtocol.SEE:
+          Action act = AgentProtocol.readAction(in);
+          state.readView(in);
+          agent.see(act, state);
+          break;
+        case AgentProtocol.PLAY:
+          Action play = agent.playCard(Card.values()[in.get()]);
+          int frame = AgentProtocol.startFrame(out, AgentProtocol.ACTION);
+          AgentProtocol.writeAction(out, play);
+          AgentProtocol.endFrame(out, frame);
+          break;
+        default:
+          throw new IllegalStateException("Unknown message type "+type);
+      }
+    }
+
+    // sends the answers, waiting for the socket to be writable if they do not all fit
+    void write() throws IOException{
+      out.flip();
+      ((SocketChannel)key.channel()).write(out);
+      key.interestOps(out.hasRemaining() ? SelectionKey.OP_READ|SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      out.compact();
+    }
+
+    void close(){
+      try{
+        key.channel().close();
+      }catch(IOException e){/*closing anyway*/}
+    }
+  }
+
+  /**
+   * Hosts an agent class, each connection getting a new agent.
+   * Run with: java loveletter.AgentHost [agent class] [port]
+   * The defaults are agents.KnowledgeBasedAgent on port 7000 of the loopback address.
+   * */
+  public static void main(String[] args) throws Exception{
+    String name = args.length>0 ? args[0] : "agents.KnowledgeBasedAgent";
+    int port = args.length>1 ? Integer.parseInt(args[1]) : 7000;
+    Class<?> type = Class.forName(name);
+    Supplier<Agent> agents = () -> {
+      try{
+        return (Agent)type.getDeclaredConstructor().newInstance();
+      }catch(ReflectiveOperationException e){
+        throw new IllegalArgumentException("Cannot construct "+name, e);
+      }
+    };
+    try(AgentHost host = new AgentHost(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), agents)){
+      System.out.println("Hosting "+name+" on "+host.address());
+      host.run();
+    }
+  }
+}
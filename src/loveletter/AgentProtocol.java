@@ -0,0 +1,84 @@
+package loveletter;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol between a RemoteAgent in the game engine and the AgentHost running the agent.
+ * Every message is a frame: an int with the length of the body, a byte with the message type, then the body.
+ * The engine sends
+ *   NEW_ROUND, with the view of the player's State (see State.writeView),
+ *   SEE, with the action and the view of the player's State after it, and
+ *   PLAY, with the card drawn,
+ * and the host answers each PLAY, and only PLAY, with an ACTION carrying the agent's action.
+ * An action is 4 bytes: the card, the player, the target and the guess, each -1 for none;
+ * an action with no card is the agent playing no action.
+ * */
+final class AgentProtocol{
+
+  static final byte NEW_ROUND = 1;
+  static final byte SEE = 2;
+  static final byte PLAY = 3;
+  static final byte ACTION = 4;
+  static final int HEADER = 5; //the length and the type of a frame
+  static final int MAX_FRAME = 256; //more than the largest frame, a SEE for 4 players
+
+  private AgentProtocol(){}
+
+  /**
+   * Starts a frame, leaving room for its length, which endFrame fills in.
+   * @param out the buffer written to
+   * @param type the message type
+   * @return the position of the frame in the buffer
+   * **/
+  static int startFrame(ByteBuffer out, byte type){
+    int start = out.position();
+    out.putInt(0).put(type);
+    return start;
+  }
+
+  /**
+   * Fills in the length of a frame started by startFrame
+   * @param out the buffer written to
+   * @param start the position of the frame
+   * **/
+  static void endFrame(ByteBuffer out, int start){
+    out.putInt(start, out.position()-start-HEADER);
+  }
+
+  /**
+   * Writes an action
+   * @param out the buffer written to
+   * @param act the action, or null for none
+   * **/
+  static void writeAction(ByteBuffer out, Action act){
+    if(act==null){
+      out.put((byte)-1).put((byte)-1).put((byte)-1).put((byte)-1);
+    }else{
+      out.put((byte)act.card().ordinal()).put((byte)act.player()).put((byte)act.target());
+      out.put((byte)(act.guess()==null?-1:act.guess().ordinal()));
+    }
+  }
+
+  /**
+   * Reads an action written by writeAction
+   * @param in the buffer read from
+   * @return the action, or null for none or an action that cannot be made
+   * **/
+  static Action readAction(ByteBuffer in){
+    int card = in.get(), player = in.get(), target = in.get(), guess = in.get();
+    if(card<0) return null;
+    try{
+      switch(Card.values()[card]){
+        case GUARD: return Action.playGuard(player, target, guess<0?null:Card.values()[guess]);
+        case PRIEST: return Action.playPriest(player, target);
+        case BARON: return Action.playBaron(player, target);
+        case HANDMAID: return Action.playHandmaid(player);
+        case PRINCE: return Action.playPrince(player, target);
+        case KING: return Action.playKing(player, target);
+        case COUNTESS: return Action.playCountess(player);
+        default: return Action.playPrincess(player);
+      }
+    }catch(IllegalActionException | ArrayIndexOutOfBoundsException e){
+      return null;
+    }
+  }
+}
@@ -0,0 +1,339 @@
+package loveletter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * The statistics of a duplicate tournament, where each deal is played once for each seat rotation of the agents.
+ * The unit of observation is the deal: an agent's score for a deal is the fraction of its rotations it won,
+ * and the difference between two agents is taken deal by deal, so the luck of the deal, which both
+ * agents share, cancels out of the comparison. The standard errors are those of the means over deals.
+ * The statistics also count the games themselves, for each agent's and each seat's win rate
+ * (with Wilson score intervals), each agent's share of the rounds, and the length of the games.
+ * Every statistic is a sum of whole numbers, so adding a game or a deal takes constant time,
+ * the statistics of separate threads can be kept apart and merged in any order with the same result,
+ * and they can be written to a checkpoint and read back exactly.
+ * */
+public class DuplicateStats{
+
+  private final String[] names; //the names of the agents
+  private final int n; //the number of agents
+  private int deals; //the number of deals added
+  private int perDeal; //the number of games of each deal, or 0 before the first deal
+  private final long[] sum; //the sum over deals of each agent's wins
+  private final long[] sumSq; //the sum over deals of the square of each agent's wins
+  private final long[][] diffSq; //the sum over deals of the square of the difference of two agents' wins
+  private long games; //the number of games added
+  private long rounds; //the rounds of the games
+  private long moves; //the moves of the games
+  private final long[] agentGames; //the games each agent played
+  private final long[] agentWins; //the games each agent won
+  private final long[] agentRounds; //the rounds each agent played
+  private final long[] agentRoundWins; //the rounds each agent won
+  private final long[] seatGames; //the games played in each seat
+  private final long[] seatWins; //the games won from each seat
+
+  /**
+   * Constructs the statistics of a tournament
+   * @param names the names of the agents
+   * **/
+  public DuplicateStats(String[] names){
+    this.names = names.clone();
+    n = names.length;
+    sum = new long[n];
+    sumSq = new long[n];
+    diffSq = new long[n][n];
+    agentGames = new long[n];
+    agentWins = new long[n];
+    agentRounds = new long[n];
+    agentRoundWins = new long[n];
+    seatGames = new long[4];
+    seatWins = new long[4];
+  }
+
+  /**
+   * Adds the result of a game
+   * @param seating the index of the agent in each seat
+   * @param scores the final score of each seat, i.e. the rounds it won
+   * @param rounds the number of rounds of the game
+   * @param moves the number of moves of the game
+   * **/
+  public void addGame(int[] seating, int[] scores, int rounds, int moves){
+    games++;
+    this.rounds += rounds;
+    this.moves += moves;
+    int winner = 0;
+    for(int p = 1; p<scores.length; p++)
+      if(scores[p]>scores[winner])winner = p;
+    for(int p = 0; p<scores.length; p++){
+      int a = seating[p];
+      agentGames[a]++;
+      agentRounds[a] += rounds;
+      agentRoundWins[a] += scores[p];
+      seatGames[p]++;
+    }
+    agentWins[seating[winner]]++;
+    seatWins[winner]++;
+  }
+
+  /**
+   * Adds the statistics of other deals and games, such as those of another thread
+   * @param other the statistics of the same agents
+   * **/
+  public void merge(DuplicateStats other){
+    if(other.deals>0) games(other.perDeal);
+    deals += other.deals;
+    games += other.games;
+    rounds += other.rounds;
+    moves += other.moves;
+    for(int i = 0; i<n; i++){
+      sum[i] += other.sum[i];
+      sumSq[i] += other.sumSq[i];
+      for(int j = 0; j<n; j++) diffSq[i][j] += other.diffSq[i][j];
+      agentGames[i] += other.agentGames[i];
+      agentWins[i] += other.agentWins[i];
+      agentRounds[i] += other.agentRounds[i];
+      agentRoundWins[i] += other.agentRoundWins[i];
+    }
+    for(int p = 0; p<4; p++){
+      seatGames[p] += other.seatGames[p];
+      seatWins[p] += other.seatWins[p];
+    }
+  }
+
+  /**
+   * Adds the results of a deal
+   * @param wins the number of games of the deal each agent won
+   * @param games the number of games of the deal, i.e. the number of rotations
+   * **/
+  public void add(int[] wins, int games){
+    games(games);
+    deals++;
+    for(int i = 0; i<n; i++){
+      sum[i] += wins[i];
+      sumSq[i] += wins[i]*wins[i];
+      for(int j = 0; j<n; j++){
+        int d = wins[i]-wins[j];
+        diffSq[i][j] += d*d;
+      }
+    }
+  }
+
+  // checks every deal has the same number of games
+  private void games(int games){
+    if(perDeal!=0 && perDeal!=games) throw new IllegalArgumentException("Deals of "+games+" games added to deals of "+perDeal);
+    perDeal = games;
+  }
+
+  /**@return the number of deals added**/
+  public int deals(){return deals;}
+
+  /**@return the number of games added**/
+  public long games(){return games;}
+
+  /**@return the mean number of rounds of a game**/
+  public double meanRounds(){return games==0 ? 0 : (double)rounds/games;}
+
+  /**@return the mean number of moves of a game**/
+  public double meanMoves(){return games==0 ? 0 : (double)moves/games;}
+
+  /**@param i the index of an agent
+   * @return the fraction of its games the agent won
+   * **/
+  public double gameWinRate(int i){return agentGames[i]==0 ? 0 : (double)agentWins[i]/agentGames[i];}
+
+  /**@param i the index of an agent
+   * @return the fraction of the rounds it played the agent won
+   * **/
+  public double roundWinRate(int i){return agentRounds[i]==0 ? 0 : (double)agentRoundWins[i]/agentRounds[i];}
+
+  /**@param seat the index of a seat
+   * @return the fraction of the games played in it the seat won
+   * **/
+  public double seatWinRate(int seat){return seatGames[seat]==0 ? 0 : (double)seatWins[seat]/seatGames[seat];}
+
+  /**
+   * The Wilson score interval of a proportion, which, unlike the normal interval, stays within [0,1]
+   * and is accurate for proportions near 0 or 1 and for few trials
+   * @param successes the number of successes
+   * @param trials the number of trials
+   * @param z the normal quantile of the confidence, e.g. 1.96 for 95%
+   * @return the lower and upper bounds of the interval
+   * **/
+  public static double[] wilson(long successes, long trials, double z){
+    if(trials==0) return new double[]{0, 1};
+    double p = (double)successes/trials;
+    double z2 = z*z/trials;
+    double centre = (p+z2/2)/(1+z2);
+    double half = z*Math.sqrt(p*(1-p)/trials+z2/(4*trials))/(1+z2);
+    return new double[]{Math.max(0, centre-half), Math.min(1, centre+half)};
+  }
+
+  /**@param i the index of an agent
+   * @return the agent's mean win rate
+   * **/
+  public double winRate(int i){return deals==0 ? 0 : (double)sum[i]/perDeal/deals;}
+
+  /**@param i the index of an agent
+   * @return the standard error of the agent's win rate
+   * **/
+  public double stdErr(int i){
+    return stdErr(sum[i], sumSq[i]);
+  }
+
+  /**@param i the index of an agent
+   * @param j the index of another agent
+   * @return the mean difference of the win rates of the agents, deal by deal
+   * **/
+  public double difference(int i, int j){return deals==0 ? 0 : (double)(sum[i]-sum[j])/perDeal/deals;}
+
+  /**@param i the index of an agent
+   * @param j the index of another agent
+   * @return the standard error of the difference of the win rates of the agents, deal by deal
+   * **/
+  public double differenceStdErr(int i, int j){
+    return stdErr(sum[i]-sum[j], diffSq[i][j]);
+  }
+
+  /**
+   * The standard error the difference would have if every game were dealt independently,
+   * which the paired error is compared with to show how much variance the duplicate deals remove.
+   * @param i the index of an agent
+   * @param j the index of another agent
+   * @param games the number of games of each deal
+   * @return the standard error of the difference of the win rates, for the same number of independent games
+   * **/
+  public double independentStdErr(int i, int j, int games){
+    double pi = winRate(i), pj = winRate(j);
+    double total = (double)deals*games;
+    return Math.sqrt((pi*(1-pi)+pj*(1-pj)+2*pi*pj)/total);
+  }
+
+  /**
+   * The two-sided p-value of the difference of two agents, by the normal approximation
+   * @param i the index of an agent
+   * @param j the index of another agent
+   * @return the probability of a difference as large as that seen, if the agents were equally strong
+   * **/
+  public double pValue(int i, int j){
+    double se = differenceStdErr(i, j);
+    if(se==0) return difference(i, j)==0 ? 1 : 0;
+    return 2*(1-normalCdf(Math.abs(difference(i, j))/se));
+  }
+
+  /**
+   * Prints the win rates of the agents and seats, and the comparison of every pair of agents by deal
+   * @param ps the PrintStream to print to
+   * @param games the number of games of each deal
+   * **/
+  public void report(PrintStream ps, int games){
+    ps.printf("%d games, %.2f rounds and %.1f moves a game%n", this.games, meanRounds(), meanMoves());
+    for(int i = 0; i<n; i++){
+      double[] ci = wilson(agentWins[i], agentGames[i], 1.96);
+      ps.printf("\tAgent %d, %s:\t%d out of %d, win rate %.4f [%.4f, %.4f], round win rate %.4f%n",
+        i, names[i], agentWins[i], agentGames[i], gameWinRate(i), ci[0], ci[1], roundWinRate(i));
+    }
+    for(int p = 0; p<4 && seatGames[p]>0; p++){
+      double[] ci = wilson(seatWins[p], seatGames[p], 1.96);
+      ps.printf("\tSeat %d:\twin rate %.4f [%.4f, %.4f]%n", p, seatWinRate(p), ci[0], ci[1]);
+    }
+    if(deals==0) return;
+    ps.println(deals+" deals of "+games+" games, paired by deal");
+    for(int i = 0; i<n; i++)
+      ps.printf("\tAgent %d, %s:\twin rate %.4f +/- %.4f%n", i, names[i], winRate(i), 1.96*stdErr(i));
+    for(int i = 0; i<n; i++)
+      for(int j = i+1; j<n; j++)
+        ps.printf("\t%s - %s:\t%+.4f +/- %.4f (independent games +/- %.4f), p = %.4g%n", names[i], names[j],
+          difference(i, j), 1.96*differenceStdErr(i, j), 1.96*independentStdErr(i, j, games), pValue(i, j));
+  }
+
+  /**
+   * Prints a line of progress: the games so far, their rate, and each agent's win rate with its Wilson interval
+   * @param ps the PrintStream to print to
+   * @param rate the games played a second
+   * **/
+  public void progress(PrintStream ps, double rate){
+    StringBuilder line = new StringBuilder(String.format("%d games, %.0f games/s", games, rate));
+    for(int i = 0; i<n; i++){
+      double[] ci = wilson(agentWins[i], agentGames[i], 1.96);
+      line.append(String.format(", %s %.3f [%.3f, %.3f]", names[i], gameWinRate(i), ci[0], ci[1]));
+    }
+    ps.println(line);
+  }
+
+  // the standard error of the mean score over the deals, from the sum and the sum of squares of the wins
+  private double stdErr(long s, long sq){
+    if(deals<2) return 0;
+    double mean = (double)s/perDeal/deals;
+    return Math.sqrt(Math.max(0, (double)sq/perDeal/perDeal/deals-mean*mean)/(deals-1));
+  }
+
+  /**
+   * Writes the statistics, for a checkpoint
+   * @param out the stream written to
+   * @throws IOException if the stream cannot be written
+   * **/
+  void write(DataOutputStream out) throws IOException{
+    out.writeInt(deals);
+    out.writeInt(perDeal);
+    out.writeLong(games);
+    out.writeLong(rounds);
+    out.writeLong(moves);
+    for(int i = 0; i<n; i++){
+      out.writeLong(sum[i]);
+      out.writeLong(sumSq[i]);
+      for(int j = 0; j<n; j++) out.writeLong(diffSq[i][j]);
+      out.writeLong(agentGames[i]);
+      out.writeLong(agentWins[i]);
+      out.writeLong(agentRounds[i]);
+      out.writeLong(agentRoundWins[i]);
+    }
+    for(int p = 0; p<4; p++){
+      out.writeLong(seatGames[p]);
+      out.writeLong(seatWins[p]);
+    }
+  }
+
+  /**
+   * Reads statistics written by write
+   * @param in the stream read from
+   * @param names the names of the agents
+   * @return the statistics
+   * @throws IOException if the stream cannot be read
+   * **/
+  static DuplicateStats read(DataInputStream in, String[] names) throws IOException{
+    DuplicateStats stats = new DuplicateStats(names);
+    stats.deals = in.readInt();
+    stats.perDeal = in.readInt();
+    stats.games = in.readLong();
+    stats.rounds = in.readLong();
+    stats.moves = in.readLong();
+    for(int i = 0; i<stats.n; i++){
+      stats.sum[i] = in.readLong();
+      stats.sumSq[i] = in.readLong();
+      for(int j = 0; j<stats.n; j++) stats.diffSq[i][j] = in.readLong();
+      stats.agentGames[i] = in.readLong();
+      stats.agentWins[i] = in.readLong();
+      stats.agentRounds[i] = in.readLong();
+      stats.agentRoundWins[i] = in.readLong();
+    }
+    for(int p = 0; p<4; p++){
+      stats.seatGames[p] = in.readLong();
+      stats.seatWins[p] = in.readLong();
+    }
+    return stats;
+  }
+
+  /**
+   * The standard normal cumulative distribution function, by the approximation of Abramowitz and Stegun (26.2.17)
+   * @param z the value
+   * @return the probability a standard normal variable is less than z
+   * **/
+  static double normalCdf(double z){
+    if(z<0) return 1-normalCdf(-z);
+    double t = 1/(1+0.2316419*z);
+    double poly = t*(0.319381530+t*(-0.356563782+t*(1.781477937+t*(-1.821255978+t*1.330274429))));
+    return 1-Math.exp(-z*z/2)/Math.sqrt(2*Math.PI)*poly;
+  }
+}
@@ -0,0 +1,35 @@
+package loveletter;
+
+/**
+ * An agent for bulk simulation, which plays on packed states (see PackedState) and action codes (see ActionCode)
+ * rather than States and Actions, so a game between FastAgents creates no objects for each move.
+ * LoveLetter.playGame calls these methods when every agent in a quiet game is a FastAgent,
+ * and the methods of Agent otherwise; FastAgentAdapter implements the latter with the former,
+ * so a FastAgent can play anywhere an Agent can.
+ * All agents must have a 0 parameter constructor
+ * */
+public interface FastAgent extends Agent{
+
+  /**
+   * Method called at the start of a round
+   * @param start the packed initial state of the round
+   **/
+  public void newRound(long start);
+
+  /**
+   * Method called when any agent performs an action.
+   * @param player the player who performed the action
+   * @param action the action code of the action
+   * @param results the packed state of play the agent is able to observe.
+   * **/
+  public void see(int player, int action, long results);
+
+  /**
+   * Perform an action after drawing a card from the deck
+   * @param current the packed state of play the agent is able to observe
+   * @param drawn the ordinal of the card drawn from the deck
+   * @return the action code of the action the agent chooses to perform
+   * */
+  public int playCard(long current, int drawn);
+
+}
@@ -0,0 +1,42 @@
+package loveletter;
+
+/**
+ * A base for FastAgents, which plays them through the Agent interface by packing each State
+ * and turning each action code into an Action.
+ * */
+public abstract class FastAgentAdapter implements FastAgent{
+
+  private State current;
+
+  /**
+   * Method called at the start of a round
+   * @param start the starting state of the round
+   **/
+  public void newRound(State start){
+    current = start;
+    newRound(start.pack());
+  }
+
+  /**
+   * Method called when any agent performs an action. 
+   * @param act the action an agent performs
+   * @param results the state of play the agent is able to observe.
+   * **/
+  public void see(Action act, State results){
+    current = results;
+    see(act.player(), ActionCode.code(act), results.pack());
+  }
+
+  /**
+   * Perform an action after drawing a card from the deck
+   * @param c the card drawn from the deck
+   * @return the action the agent chooses to perform, or null if its action code is not an action
+   * */
+  public Action playCard(Card c){
+    try{
+      return ActionCode.action(current.getPlayerIndex(), playCard(current.pack(), c.ordinal()));
+    }catch(IllegalActionException e){
+      return null;
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package loveletter;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hosts many concurrent games of LoveLetter in one JVM.
+ * Each game is a task with its own LoveLetter, and so its own random number generator and State,
+ * and its own agents, made fresh for the game, so games share nothing but the scheduler.
+ * Where the JVM has virtual threads (Java 21 on) each game runs on its own virtual thread,
+ * otherwise on a fixed pool of platform threads, one for each permit.
+ * The scheduler is a fair semaphore of permits, one for each move being computed:
+ * an agent takes a permit for its playCard and gives it back with its move, so slow agents
+ * (MCTS) and fast agents (Random, Knowledge Based) queue for the cores in turn, and a game
+ * waiting for a permit parks its virtual thread rather than holding a platform thread.
+ * */
+public class GameServer implements AutoCloseable{
+
+  private final ExecutorService games; // runs each game as a task
+  private final boolean virtual; // 'true' if the games run on virtual threads
+  private final Semaphore permits; // the moves that may be computed at once
+  private final PrintStream ps; // where the games report illegal actions
+  private final AtomicLong moves = new AtomicLong(); // the moves computed so far
+
+  /**
+   * Constructs a game server.
+   * @param permits the number of moves computed at once, usually the number of cores
+   * @param ps a PrintStream for the illegal actions reported by the games
+   * @throws IllegalArgumentException if permits is not positive
+   * **/
+  public GameServer(int permits, PrintStream ps){
+    if(permits<1) throw new IllegalArgumentException("The server needs at least one permit");
+    this.permits = new Semaphore(permits, true);
+    this.ps = ps;
+    ExecutorService executor = virtualThreadExecutor();
+    virtual = executor!=null;
+    games = virtual ? executor : Executors.newFixedThreadPool(permits);
+  }
+
+  /**
+   * Looks up the virtual thread executor by reflection, so the server compiles and runs on JVMs without one.
+   * @return an executor starting a virtual thread for each task, or null if the JVM has none
+   * **/
+  private static ExecutorService virtualThreadExecutor(){
+    try{
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }catch(ReflectiveOperationException | UnsupportedOperationException e){
+      return null; // before Java 21, or a preview feature that is not enabled
+    }
+  }
+
+  /**
+   * Starts a game.
+   * @param seed the seed of the game's deals
+   * @param lineup makes the agents of the game, called once for each game so no agent is shared
+   * @return the scores of each agent, when the game is over
+   * **/
+  public Future<int[]> submit(long seed, Supplier<Agent[]> lineup){
+    return games.submit(() -> {
+      Agent[] agents = lineup.get();
+      Agent[] scheduled = new Agent[agents.length];
+      for(int i = 0; i<agents.length; i++) scheduled[i] = new ScheduledAgent(agents[i]);
+      return new LoveLetter(seed, ps, true).playGame(scheduled);
+    });
+  }
+
+  /**
+   * Plays a number of games concurrently and waits for them all.
+   * @param games the number of games
+   * @param firstSeed the seed of the first game's deals, the others following it
+   * @param lineup makes the agents of each game
+   * @return the scores of each game, in the order of their seeds
+   * @throws InterruptedException if interrupted while waiting for the games
+   * @throws IllegalStateException if a game fails
+   * **/
+  public List<int[]> playAll(int games, long firstSeed, Supplier<Agent[]> lineup) throws InterruptedException{
+    List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+    for(int g = 0; g<games; g++) futures.add(submit(firstSeed+g, lineup));
+    List<int[]> results = new ArrayList<int[]>();
+    try{
+      for(Future<int[]> f: futures) results.add(f.get());
+    }catch(ExecutionException e){
+      throw new IllegalStateException("A game failed", e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * @return 'true' if the games run on virtual threads
+   * **/
+  public boolean virtualThreads(){return virtual;}
+
+  /**
+   * @return the number of moves computed by the agents so far
+   * **/
+  public long moves(){return moves.get();}
+
+  /**
+   * Stops accepting games; the games already started are played out.
+   * **/
+  public void close(){
+    games.shutdown();
+  }
+
+  /**
+   * An agent which takes a permit of the scheduler for each move it computes,
+   * passing Observations on to the agents that take them
+   * */
+  private class ScheduledAgent implements ObservingAgent{
+    private final Agent agent;
+
+    ScheduledAgent(Agent agent){this.agent = agent;}
+
+    public void newRound(State start){agent.newRound(start);}
+
+    public void see(Action act, State results){agent.see(act, results);}
+
+    public void observe(Observation obs, State results){
+      if(agent instanceof ObservingAgent) ((ObservingAgent)agent).observe(obs, results);
+      else agent.see(obs.action(), results);
+    }
+
+    public Action playCard(Card c){
+      permits.acquireUninterruptibly();
+      try{
+        return agent.playCard(c);
+      }finally{
+        permits.release();
+        moves.incrementAndGet();
+      }
+    }
+
+    public String toString(){return agent.toString();}
+  }
+
+  /**
+   * Plays a ladder of games on the server and reports the wins of each seat.
+   * Run with: java loveletter.GameServer [games] [permits] [agent classes...]
+   * where the agents are named by class, e.g. agents.RandomAgent, and have 0 parameter constructors.
+   * The defaults are 10000 games, a permit for each core, and three Random Agents against a Knowledge Based Agent.
+   * */
+  public static void main(String[] args) throws Exception{
+    int numGames = args.length>0 ? Integer.parseInt(args[0]) : 10000;
+    int numPermits = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    String[] names = args.length>2 ? java.util.Arrays.copyOfRange(args, 2, args.length)
+      : new String[]{"agents.RandomAgent", "agents.RandomAgent", "agents.RandomAgent", "agents.KnowledgeBasedAgent"};
+    List<Class<?>> classes = new ArrayList<Class<?>>();
+    for(String name: names) classes.add(Class.forName(name));
+    Supplier<Agent[]> lineup = () -> {
+      Agent[] agents = new Agent[classes.size()];
+      for(int i = 0; i<agents.length; i++){
+        try{
+          agents[i] = (Agent) classes.get(i).getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException e){
+          throw new IllegalArgumentException("Cannot construct "+classes.get(i).getName(), e);
+        }
+      }
+      return agents;
+    };
+
+    try(GameServer server = new GameServer(numPermits, System.out)){
+      long start = System.nanoTime();
+      List<int[]> results = server.playAll(numGames, 0, lineup);
+      double seconds = (System.nanoTime()-start)/1e9;
+      int[] wins = new int[names.length];
+      for(int[] scores: results){
+        if(scores==null) continue; // the game went wrong, and has reported it
+        int winner = 0;
+        for(int p = 1; p<scores.length; p++)
+          if(scores[p]>scores[winner])winner = p;
+        wins[winner]++;
+      }
+      System.out.println(numGames+" games on "+(server.virtualThreads() ? "virtual threads" : "a pool of "+numPermits+" threads")
+        +" in "+String.format("%.1f", seconds)+"s, "+String.format("%.0f", server.moves()/seconds)+" moves/s");
+      for(int i = 0; i<names.length; i++)
+        System.out.println("\tAgent "+i+", "+names[i]+":\t"+wins[i]+" out of "+numGames);
+    }
+  }
+}
@@ -0,0 +1,323 @@
+package loveletter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A league rating a pool of agents with 2, 3 and 4 player matches, played in parallel.
+ * Each agent has a Glicko rating: a rating on the Elo scale and a rating deviation, the uncertainty of the rating,
+ * which shrinks as the agent plays. After each match, every pair of players is scored as a win, loss or draw
+ * by their final scores, and each player's rating and deviation are updated with the Glicko formulas.
+ * The matches are scheduled where they are most informative: each match is built around the agent of
+ * the greatest deviation, and its opponents are drawn in proportion to their deviation, favouring
+ * agents rated near it. The ratings can be saved and loaded, so a league carries on between runs,
+ * and agents can be added to a league at any time, starting at the initial rating and deviation.
+ * Variants of an agent (e.g. MCTS agents with other budgets, or tuned Knowledge Based Agents)
+ * are added under their own names with their own suppliers.
+ * Each match can also be recorded in a ResultStore.
+ * */
+public class League{
+
+  public static final double INITIAL_RATING = 1500;
+  public static final double INITIAL_DEVIATION = 350;
+  private static final double MIN_DEVIATION = 30; //the agents do not change, but games are not independent trials
+  private static final double Q = Math.log(10)/400;
+
+  private final List<Member> members = new ArrayList<Member>();
+  private final Random random; //chooses the matches, seats and deals
+  private final PrintStream ps; //where the games report illegal actions
+  private volatile ResultStore results; //where each match is recorded, or null
+
+  /**
+   * An agent of the league and its rating
+   * */
+  private static class Member{
+    final String name;
+    Supplier<Agent> agents; //makes the agent for each match, or null if only the rating is known
+    double rating = INITIAL_RATING;
+    double deviation = INITIAL_DEVIATION;
+    int games;
+
+    Member(String name){this.name = name;}
+  }
+
+  /**
+   * Constructs an empty league
+   * @param seed the seed of the league's random choices
+   * @param ps a PrintStream for the illegal actions reported by the games
+   * **/
+  public League(long seed, PrintStream ps){
+    random = new Random(seed);
+    this.ps = ps;
+  }
+
+  /**
+   * Adds an agent to the league, or gives the supplier of an agent whose rating was loaded
+   * @param name the name of the agent, which identifies it in the saved ratings
+   * @param agents makes the agent for each match
+   * @throws IllegalArgumentException if the name is empty or holds a tab or a line break, which the saved ratings cannot hold
+   * **/
+  public synchronized void add(String name, Supplier<Agent> agents){
+    if(name.isEmpty() || name.indexOf('\t')>=0 || name.indexOf('\n')>=0 || name.indexOf('\r')>=0)
+      throw new IllegalArgumentException("An agent's name must be a line of text without tabs: "+name);
+    member(name).agents = agents;
+  }
+
+  /**
+   * Records each match played from now on in a store
+   * @param store the store, or null to stop recording
+   * **/
+  public void record(ResultStore store){results = store;}
+
+  /**
+   * Plays matches in parallel, updating the ratings after each
+   * @param matches the number of matches
+   * @param threads the number of threads
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * @throws IllegalStateException if there are fewer than 2 agents, or a game fails
+   * **/
+  public void play(int matches, int threads) throws InterruptedException{
+    if(active().size()<2) throw new IllegalStateException("A league needs at least 2 agents");
+    AtomicInteger next = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<Future<?>>();
+    for(int t = 0; t<threads; t++){
+      workers.add(pool.submit(() -> {
+        while(next.getAndIncrement()<matches) playMatch();
+        return null;
+      }));
+    }
+    pool.shutdown();
+    try{
+      for(Future<?> f: workers) f.get();
+    }catch(ExecutionException e){
+      throw new IllegalStateException("A match failed", e.getCause());
+    }finally{
+      pool.shutdownNow();
+    }
+  }
+
+  // schedules a match, plays it, and rates it; only scheduling and rating hold the lock
+  private void playMatch(){
+    Member[] players;
+    long seed;
+    synchronized(this){
+      players = schedule();
+      seed = random.nextLong();
+    }
+    Agent[] seats = new Agent[players.length];
+    String[] names = new String[players.length];
+    for(int s = 0; s<seats.length; s++){
+      seats[s] = players[s].agents.get();
+      names[s] = players[s].name;
+    }
+    LoveLetter game = new LoveLetter(seed, ps, true);
+    int[] scores = game.playGame(seats);
+    if(scores==null) return; // the game went wrong, and has reported it
+    ResultStore store = results;
+    if(store!=null){
+      try{
+        store.append(seed, names, scores, game);
+      }catch(IOException e){
+        throw new IllegalStateException("Cannot record a match", e);
+      }
+    }
+    synchronized(this){
+      rate(players, scores);
+    }
+  }
+
+  /**
+   * Chooses the players of the next match, in the order of their seats.
+   * The number of players is drawn from those the pool allows, the agent of the greatest deviation plays
+   * (drawn uniformly if several share it, as they do once every deviation reaches its floor),
+   * and each opponent is drawn with a weight of its deviation squared, discounted by the expected
+   * score of the stronger against the weaker so lopsided matches, which say little, are rarer.
+   * @return the players of the match
+   * **/
+  private Member[] schedule(){
+    List<Member> pool = active();
+    int num = 2+random.nextInt(Math.min(4, pool.size())-1);
+    Member anchor = pool.get(0);
+    int ties = 1;
+    for(Member m: pool.subList(1, pool.size())){
+      if(m.deviation>anchor.deviation){
+        anchor = m;
+        ties = 1;
+      }
+      else if(m.deviation==anchor.deviation && random.nextInt(++ties)==0) anchor = m;//uniform among the ties
+    }
+    List<Member> players = new ArrayList<Member>();
+    players.add(anchor);
+    pool.remove(anchor);
+    double[] weights = new double[pool.size()];
+    while(players.size()<num){
+      double total = 0;
+      for(int i = 0; i<pool.size(); i++){
+        Member m = pool.get(i);
+        double e = expected(anchor.rating, m.rating, m.deviation);
+        weights[i] = m.deviation*m.deviation*4*e*(1-e);
+        total += weights[i];
+      }
+      double x = random.nextDouble()*total;
+      int i = 0;
+      while(i<pool.size()-1 && (x -= weights[i])>=0) i++;
+      players.add(pool.remove(i));
+    }
+    java.util.Collections.shuffle(players, random);
+    return players.toArray(new Member[0]);
+  }
+
+  /**
+   * Updates the ratings of the players of a match with the Glicko formulas, each pair of players
+   * scoring a win, a loss or a draw by their final scores, from the ratings before the match.
+   * @param players the players, in the order of their seats
+   * @param scores the final score of each seat
+   * **/
+  private void rate(Member[] players, int[] scores){
+    int n = players.length;
+    double[] rating = new double[n];
+    double[] deviation = new double[n];
+    for(int i = 0; i<n; i++){
+      double sum = 0, info = 0;
+      for(int j = 0; j<n; j++){
+        if(i==j) continue;
+        double g = g(players[j].deviation);
+        double e = expected(players[i].rating, players[j].rating, players[j].deviation);
+        double s = scores[i]>scores[j] ? 1 : scores[i]<scores[j] ? 0 : 0.5;
+        sum += g*(s-e);
+        info += g*g*e*(1-e);
+      }
+      double precision = 1/(players[i].deviation*players[i].deviation)+Q*Q*info;
+      rating[i] = players[i].rating+Q/precision*sum;
+      deviation[i] = Math.max(MIN_DEVIATION, Math.sqrt(1/precision));
+    }
+    for(int i = 0; i<n; i++){
+      players[i].rating = rating[i];
+      players[i].deviation = deviation[i];
+      players[i].games++;
+    }
+  }
+
+  // the Glicko discount of a rating difference for the uncertainty of the opponent's rating
+  private static double g(double deviation){
+    return 1/Math.sqrt(1+3*Q*Q*deviation*deviation/(Math.PI*Math.PI));
+  }
+
+  // the expected score of a player against an opponent
+  private static double expected(double rating, double opponent, double deviation){
+    return 1/(1+Math.pow(10, -g(deviation)*(rating-opponent)/400));
+  }
+
+  // the agents that can play, a new list
+  private synchronized List<Member> active(){
+    List<Member> active = new ArrayList<Member>();
+    for(Member m: members) if(m.agents!=null) active.add(m);
+    return active;
+  }
+
+  // the member of a name, added if new
+  private Member member(String name){
+    for(Member m: members) if(m.name.equals(name)) return m;
+    Member m = new Member(name);
+    members.add(m);
+    return m;
+  }
+
+  /**
+   * @param name the name of an agent
+   * @return the agent's rating, or NaN if it is not in the league
+   * **/
+  public synchronized double rating(String name){
+    for(Member m: members) if(m.name.equals(name)) return m.rating;
+    return Double.NaN;
+  }
+
+  /**
+   * @param name the name of an agent
+   * @return the agent's rating deviation, or NaN if it is not in the league
+   * **/
+  public synchronized double deviation(String name){
+    for(Member m: members) if(m.name.equals(name)) return m.deviation;
+    return Double.NaN;
+  }
+
+  /**
+   * Saves the ratings as text, a line for each agent: its name, rating, deviation and games, separated by tabs.
+   * The text is written to a temporary file and renamed over the file, so a crash leaves the old ratings or the new.
+   * @param file the file to write
+   * @throws IOException if the file cannot be written
+   * **/
+  public synchronized void save(Path file) throws IOException{
+    StringBuilder text = new StringBuilder();
+    for(Member m: members) text.append(m.name).append('\t').append(m.rating).append('\t').append(m.deviation).append('\t').append(m.games).append('\n');
+    Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+    Files.writeString(tmp, text);
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Loads ratings written by save, replacing those of the same names;
+   * the agents of the league are then given by add
+   * @param file the file to read
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if a line is not a name, rating, deviation and games
+   * **/
+  public synchronized void load(Path file) throws IOException{
+    for(String line: Files.readAllLines(file)){
+      if(line.isBlank()) continue;
+      String[] parts = line.split("\t");
+      if(parts.length!=4) throw new IllegalArgumentException("Not a rating: "+line);
+      Member m = member(parts[0]);
+      m.rating = Double.parseDouble(parts[1]);
+      m.deviation = Double.parseDouble(parts[2]);
+      m.games = Integer.parseInt(parts[3]);
+    }
+  }
+
+  /**
+   * Prints the agents by rating, with the 95% interval of each rating
+   * @param ps the PrintStream to print to
+   * **/
+  public synchronized void report(PrintStream ps){
+    List<Member> sorted = new ArrayList<Member>(members);
+    sorted.sort(Comparator.comparingDouble((Member m) -> -m.rating));
+    for(Member m: sorted)
+      ps.printf("\t%-32s %6.0f +/- %3.0f\t%d games%s%n", m.name, m.rating, 1.96*m.deviation, m.games, m.agents==null ? " (not playing)" : "");
+  }
+
+  /**
+   * Plays a league of agent classes, carrying on from the ratings in the file if there are any.
+   * Run with: java loveletter.League [matches] [threads] [file] [agent classes...]
+   * The defaults are 2000 matches, a thread for each core, the file league.ratings, and a pool of the
+   * Random, Knowledge Based, Distilled and Expectimax agents.
+   * */
+  public static void main(String[] args) throws Exception{
+    int matches = args.length>0 ? Integer.parseInt(args[0]) : 2000;
+    int threads = args.length>1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+    Path file = Paths.get(args.length>2 ? args[2] : "league.ratings");
+    String[] names = args.length>3 ? java.util.Arrays.copyOfRange(args, 3, args.length)
+      : new String[]{"agents.RandomAgent", "agents.KnowledgeBasedAgent", "agents.DistilledAgent", "agents.ExpectimaxAgent"};
+    League league = new League(System.nanoTime(), System.out);
+    if(Files.exists(file)) league.load(file);
+    for(String name: names) league.add(name, Tournament.supplier(name));
+    long start = System.nanoTime();
+    league.play(matches, threads);
+    league.save(file);
+    System.out.printf("%d matches in %.1fs, ratings saved to %s%n", matches, (System.nanoTime()-start)/1e9, file);
+    league.report(System.out);
+  }
+}
@@ -15,8 +15,13 @@ public class LoveLetter{
   private Agent rando;
   private Random random;
   private PrintStream ps;
+  private boolean quiet; // 'true' silences the game's print statements
+  private int rounds; // the rounds of the last game played
+  private int moves; // the moves of the last game played
+  private int[] decisions; // the decisions of each player in the last game played
+  private long[] decisionNanos; // the nanoseconds each player took over its decisions
+  private long[] maxDecisionNanos; // the nanoseconds of each player's slowest decision
 
-  private static int[] playerWins = new int[4]; // for testing purposes
   // change the following variable to 'true', if you want to run a larger test
   private static boolean testing = false; // 'true' will silence all other print statements
   private static int numRounds = 100000; // decides the number of games to execute
@@ -27,8 +32,20 @@ public class LoveLetter{
    * @param ps a PrintStream object to record the events of the game
    * **/
   public LoveLetter(long seed, PrintStream ps){
+    this(seed, ps, testing);
+  }
+
+  /**
+   * Constructs a LoveLetter game.
+   * Games constructed this way share no state, so they can be played on separate threads.
+   * @param seed a seed for the random number generator.
+   * @param ps a PrintStream object to record the events of the game
+   * @param quiet 'true' silences the print statements of the game, except illegal actions
+   * **/
+  public LoveLetter(long seed, PrintStream ps, boolean quiet){
     this.random = new Random(seed);
     this.ps = ps;
+    this.quiet = quiet;
     rando = new RandomAgent();
   }
 
@@ -48,11 +65,21 @@ public class LoveLetter{
    * @return scores of each agent as an array of integers
    * **/
   public int[] playGame(Agent[] agents){
+    if(quiet){
+      FastAgent[] fast = new FastAgent[agents.length];
+      for(int i = 0; i<agents.length && fast!=null; i++){
+        if(agents[i] instanceof FastAgent) fast[i] = (FastAgent)agents[i];
+        else fast = null;
+      }
+      if(fast!=null) return playFastGame(agents, fast);
+    }
     boolean gameOver = false;
     int winner=0;
     int numPlayers = agents.length;
     State gameState = new State(random, agents);//the game state
     State[] playerStates = new State[numPlayers];
+    rounds = moves = 0;
+    resetTimes(numPlayers);
     try{
       while(!gameState.gameOver()){
         for(int i = 0; i<numPlayers; i++){
@@ -60,16 +87,19 @@ public class LoveLetter{
           agents[i].newRound(playerStates[i]);
         }
         while(!gameState.roundOver()){
-          if(!testing) {
+          if(!quiet) {
             System.out.println("Cards are:\nplayer 0:"+gameState.getCard(0)+"\nplayer 1:"+gameState.getCard(1)+"\nplayer 2:"+gameState.getCard(2)+"\nplayer 3:"+gameState.getCard(3));
           }       
           Card topCard = gameState.drawCard(); 
-          if(!testing) {
+          if(!quiet) {
             System.out.println("Player "+gameState.nextPlayer()+" draws the "+topCard);
           }
+          long thinking = System.nanoTime();
           Action act = agents[gameState.nextPlayer()].playCard(topCard);
+          time(gameState.nextPlayer(), System.nanoTime()-thinking);
+          moves++;
           try{
-            if(testing) {
+            if(quiet) {
               gameState.update(act,topCard);
             } else {
               ps.println(gameState.update(act,topCard));
@@ -82,16 +112,19 @@ public class LoveLetter{
             act = rando.playCard(topCard);
             ps.println(gameState.update(act,topCard));
           }
-          for(int p = 0; p<numPlayers; p++)
-            agents[p].see(act,playerStates[p]);
+          for(int p = 0; p<numPlayers; p++){
+            if(agents[p] instanceof ObservingAgent)
+              ((ObservingAgent)agents[p]).observe(gameState.observation(act,p),playerStates[p]);
+            else agents[p].see(act,playerStates[p]);
+          }
         }
-        if(!testing) {
+        if(!quiet) {
           System.out.println("New Round, scores are:\nplayer 0:"+gameState.score(0)+"\nplayer 1:"+gameState.score(1)+"\nplayer 2:"+gameState.score(2)+"\nplayer 3:"+gameState.score(3));
         }        
+        rounds++;
         gameState.newRound();
       }
-      playerWins[gameState.gameWinner()]++;
-      if(!testing) {
+      if(!quiet) {
         ps.println("Player "+gameState.gameWinner()+" wins the Princess's heart!");
       }
       int[] scoreboard = new int[numPlayers];
@@ -104,27 +137,190 @@ public class LoveLetter{
     } 
   }
 
+  // the agent classes named on the command line from an index, or the default pair
+  private static String[] agentNames(String[] args, int from){
+    return args.length>from ? java.util.Arrays.copyOfRange(args, from, args.length)
+      : new String[]{"agents.KnowledgeBasedAgent", "agents.RandomAgent"};
+  }
+
+  /**
+   * @return the number of rounds of the last game played
+   * **/
+  public int rounds(){return rounds;}
+
+  /**
+   * @return the number of moves of the last game played
+   * **/
+  public int moves(){return moves;}
+
+  /**
+   * @param player a player of the last game played
+   * @return the number of cards the player chose to play
+   * **/
+  public int decisions(int player){return decisions[player];}
+
+  /**
+   * @param player a player of the last game played
+   * @return the nanoseconds the player took to choose its cards, in all
+   * **/
+  public long decisionNanos(int player){return decisionNanos[player];}
+
+  /**
+   * @param player a player of the last game played
+   * @return the nanoseconds of the player's slowest choice of a card
+   * **/
+  public long maxDecisionNanos(int player){return maxDecisionNanos[player];}
+
+  // clears the decision times for a new game
+  private void resetTimes(int numPlayers){
+    decisions = new int[numPlayers];
+    decisionNanos = new long[numPlayers];
+    maxDecisionNanos = new long[numPlayers];
+  }
+
+  // records the time a player took to choose a card
+  private void time(int player, long nanos){
+    decisions[player]++;
+    decisionNanos[player] += nanos;
+    if(nanos>maxDecisionNanos[player]) maxDecisionNanos[player] = nanos;
+  }
+
+  /**
+   * Plays a quiet game between FastAgents, on packed states and action codes,
+   * so no objects are created for each move.
+   * @param agents the players in the game
+   * @param fast the same players, as FastAgents
+   * @return scores of each agent as an array of integers
+   * **/
+  private int[] playFastGame(Agent[] agents, FastAgent[] fast){
+    int numPlayers = agents.length;
+    State gameState = new State(random, agents);//the game state
+    State[] playerStates = new State[numPlayers];
+    rounds = moves = 0;
+    resetTimes(numPlayers);
+    try{
+      while(!gameState.gameOver()){
+        for(int i = 0; i<numPlayers; i++){
+          playerStates[i] = gameState.playerState(i);
+          fast[i].newRound(playerStates[i].pack());
+        }
+        while(!gameState.roundOver()){
+          Card topCard = gameState.drawCard();
+          int p = gameState.nextPlayer();
+          long thinking = System.nanoTime();
+          int code = fast[p].playCard(playerStates[p].pack(), topCard.ordinal());
+          time(p, System.nanoTime()-thinking);
+          moves++;
+          try{
+            gameState.update(code,topCard);
+          }
+          catch(IllegalActionException e){
+            ps.println("ILLEGAL ACTION PERFORMED BY PLAYER "+agents[p]+
+              "("+p+")\nRandom Move Substituted");
+            rando.newRound(gameState.playerState(p));
+            code = ActionCode.code(rando.playCard(topCard));
+            gameState.update(code,topCard);
+          }
+          for(int q = 0; q<numPlayers; q++)
+            fast[q].see(p,code,playerStates[q].pack());
+        }
+        rounds++;
+        gameState.newRound();
+      }
+      int[] scoreboard = new int[numPlayers];
+      for(int p = 0; p<numPlayers; p++)scoreboard[p] = gameState.score(p);
+      return scoreboard;
+    }catch(IllegalActionException e){
+      ps.println("Something has gone wrong.");
+      e.printStackTrace();
+      return null;
+    } 
+  }
+
   /**
    * This main method is provided to run a simple test game with provided agents.
    * The agent implementations should be in the default package.
+   * To compare agents with a duplicate tournament, run with:
+   *   java loveletter.LoveLetter duplicate [deals] [agent classes...]
+   * where each deal is played in every seat rotation, see Tournament, on a thread for each core,
+   * printing the progress every 10 seconds.
+   * The defaults are 1000 deals of agents.KnowledgeBasedAgent against agents.RandomAgent.
+   * To play duplicate deals only until it is decided whether the first agent beats the second by a margin, run with:
+   *   java loveletter.LoveLetter sprt [margin] [max deals] [agent classes...]
+   * see SequentialTest, with error rates of 0.05; the defaults are a margin of 0.05 and at most 100000 deals.
+   * To play a long duplicate tournament that can be stopped and resumed, run with:
+   *   java loveletter.LoveLetter checkpoint [file] [deals] [agent classes...]
+   * which writes the checkpoint file every 10 seconds, and resumes from it if it exists;
+   * the defaults are the file tournament.checkpoint and 100000 deals.
+   * To record each game of a duplicate tournament in a ResultStore, and report the store, run with:
+   *   java loveletter.LoveLetter results [directory] [deals] [agent classes...]
+   * which appends to the store if it exists; the defaults are the directory results and 1000 deals.
    * */
   public static void main(String[] args){
+    if(args.length>0 && args[0].equals("duplicate")){
+      int deals = args.length>1 ? Integer.parseInt(args[1]) : 1000;
+      Tournament tournament = Tournament.of(agentNames(args, 2), System.out);
+      try{
+        tournament.run(deals, 0, Runtime.getRuntime().availableProcessors(), System.out, 10000)
+          .report(System.out, tournament.numAgents());
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if(args.length>0 && args[0].equals("checkpoint")){
+      java.nio.file.Path file = java.nio.file.Paths.get(args.length>1 ? args[1] : "tournament.checkpoint");
+      int deals = args.length>2 ? Integer.parseInt(args[2]) : 100000;
+      Tournament tournament = Tournament.of(agentNames(args, 3), System.out);
+      try{
+        tournament.run(deals, 0, Runtime.getRuntime().availableProcessors(), System.out, 10000, file)
+          .report(System.out, tournament.numAgents());
+      }catch(java.io.IOException e){
+        System.out.println("The checkpoint failed: "+e);
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if(args.length>0 && args[0].equals("results")){
+      java.nio.file.Path dir = java.nio.file.Paths.get(args.length>1 ? args[1] : "results");
+      int deals = args.length>2 ? Integer.parseInt(args[2]) : 1000;
+      Tournament tournament = Tournament.of(agentNames(args, 3), System.out);
+      try(ResultStore store = new ResultStore(dir)){
+        tournament.record(store);
+        // each deal stored is a game or more, so the seeds from the rows stored on are new
+        tournament.run(deals, store.rows(), Runtime.getRuntime().availableProcessors(), System.out, 10000);
+        store.report(System.out);
+      }catch(java.io.IOException e){
+        System.out.println("The results cannot be stored: "+e);
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if(args.length>0 && args[0].equals("sprt")){
+      double margin = args.length>1 ? Double.parseDouble(args[1]) : 0.05;
+      int maxDeals = args.length>2 ? Integer.parseInt(args[2]) : 100000;
+      Tournament tournament = Tournament.of(agentNames(args, 3), System.out);
+      SequentialTest test = new SequentialTest(margin, 0.05, 0.05);
+      DuplicateStats stats = tournament.sequential(test, 0, 1, maxDeals, 0);
+      System.out.println(test);
+      stats.report(System.out, tournament.numAgents());
+      return;
+    }
     // to run a larger test
     if(testing) {
+      DuplicateStats stats = new DuplicateStats(new String[]{"Random", "Random", "Random", "Knowledge Based"});
+      int[] seating = {0, 1, 2, 3};
+      long start = System.nanoTime();
       for(int i=0; i<numRounds; i++) {
         Agent[] agents = {new agents.RandomAgent(),new agents.RandomAgent(), new agents.RandomAgent(), new agents.KnowledgeBasedAgent()};
         LoveLetter env = new LoveLetter();
-        env.playGame(agents);
+        int[] scores = env.playGame(agents);
+        if(scores!=null) stats.addGame(seating, scores, env.rounds(), env.moves()); // null if the game went wrong, and has reported it
+        if((i+1)%10000==0) stats.progress(System.out, (i+1)/((System.nanoTime()-start)/1e9));
       }
-      int totalWins = (playerWins[0] + playerWins[1] + playerWins[2] + playerWins[3]);
-      System.out.println("\tAgent 0, (Random):\t"+playerWins[0]+" out of "+totalWins);
-      System.out.println("\tAgent 1, (Random):\t"+playerWins[1]+" out of "+totalWins);
-      System.out.println("\tAgent 2, (Random):\t"+playerWins[2]+" out of "+totalWins);
-      System.out.println("\tAgent 3, (Knowledge Based):\t"+playerWins[3]+" out of "+totalWins);
-      float randomTotal = (float) (playerWins[0] + playerWins[1] + playerWins[2]) / numRounds * 100;
-      System.out.println("\nRandom Agent win %:\t\t" + randomTotal);
-      float agentTotal = (float) (playerWins[3]) / numRounds * 100;
-      System.out.println("Knowledge Based Agent win %:\t" + agentTotal);
+      stats.report(System.out, 4);
     } else {
       Agent[] agents = {new agents.RandomAgent(),new agents.RandomAgent(), new agents.RandomAgent(), new agents.KnowledgeBasedAgent()};
       LoveLetter env = new LoveLetter();
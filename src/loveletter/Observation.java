@@ -0,0 +1,90 @@
+package loveletter;
+
+/**
+ * What a player observes of an action, delivered to ObservingAgents instead of see,
+ * so an agent can update what it derives from the State with the changes alone, rather than rescanning the State.
+ * The observation records who played what, whether the target was protected by the Handmaid,
+ * who was eliminated, the card discarded besides the card played (an eliminated player's card, or a Prince's target's card),
+ * the card revealed to the observer (by a Priest, a Baron tie or a King), and whether a King swapped cards.
+ * Observations are created by the game engine and are immutable.
+ * */
+public final class Observation{
+
+  private final Action action; //the action performed
+  private final int observer; //the player observing the action
+  private final boolean blocked; //the target was protected by the Handmaid, so the action had no effect
+  private final int eliminated; //the player eliminated by the action, or -1
+  private final int discarder; //the player who discarded a card besides the card played, or -1
+  private final Card discard; //the card they discarded, or null
+  private final int revealedPlayer; //the player whose card was revealed to the observer, or -1
+  private final Card revealed; //the card revealed to the observer, or null
+
+  Observation(Action action, int observer, boolean blocked, int eliminated, int discarder, Card discard, int revealedPlayer, Card revealed){
+    this.action = action;
+    this.observer = observer;
+    this.blocked = blocked;
+    this.eliminated = eliminated;
+    this.discarder = discarder;
+    this.discard = discard;
+    this.revealedPlayer = revealedPlayer;
+    this.revealed = revealed;
+  }
+
+  /**the action performed
+   * @return the action performed
+   * **/
+  public Action action(){return action;}
+
+  /**the player observing the action
+   * @return the index of the observing player
+   * **/
+  public int observer(){return observer;}
+
+  /**whether the action had no effect as the target, and every other player, was protected by the Handmaid
+   * @return true if and only if the action was blocked by the Handmaid
+   * **/
+  public boolean blocked(){return blocked;}
+
+  /**the player eliminated by the action
+   * @return the index of the eliminated player, or -1 if no one was eliminated
+   * **/
+  public int eliminated(){return eliminated;}
+
+  /**the player who discarded a card besides the card played, i.e. a player eliminated, or the target of a Prince
+   * @return the index of the player, or -1 if no other card was discarded
+   * **/
+  public int discarder(){return discarder;}
+
+  /**the card discarded besides the card played
+   * @return the card, or null if no other card was discarded
+   * **/
+  public Card discard(){return discard;}
+
+  /**the player whose card was revealed to the observer, by the observer's Priest, a Baron tie or a King swap
+   * @return the index of the player, or -1 if no card was revealed to the observer
+   * **/
+  public int revealedPlayer(){return revealedPlayer;}
+
+  /**the card revealed to the observer, which the revealed player now holds
+   * @return the card, or null if no card was revealed to the observer
+   * **/
+  public Card revealed(){return revealed;}
+
+  /**whether the actor and the target swapped cards with a King
+   * @return true if and only if a King was played to effect
+   * **/
+  public boolean swapped(){return action.card()==Card.KING && !blocked;}
+
+  /**produces a string representation of the observation
+   * @return a string representation of the observation
+   * **/
+  public String toString(){
+    String s = "Player "+observer+" sees "+action.card()+" played by player "+action.player();
+    if(blocked) s+= ", blocked by the Handmaid";
+    if(swapped()) s+= ", swapping cards";
+    if(discarder!=-1) s+= ", player "+discarder+" discards the "+discard;
+    if(eliminated!=-1) s+= ", player "+eliminated+" is eliminated";
+    if(revealedPlayer!=-1) s+= ", player "+revealedPlayer+" holds the "+revealed;
+    return s;
+  }
+}
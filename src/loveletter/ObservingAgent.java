@@ -0,0 +1,17 @@
+package loveletter;
+
+/**
+ * An agent which is told the effects of each action as an Observation,
+ * so it can update what it derives from the State incrementally.
+ * The game engine calls observe instead of see for these agents.
+ * */
+public interface ObservingAgent extends Agent{
+
+  /**
+   * Method called instead of see when any agent performs an action.
+   * @param obs what the agent observed of the action
+   * @param results the state of play the agent is able to observe.
+   * **/
+  public void observe(Observation obs, State results);
+
+}
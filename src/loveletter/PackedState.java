@@ -0,0 +1,113 @@
+package loveletter;
+
+/**
+ * The observed state of a round packed into a long, for FastAgents, see State.pack.
+ * Cards are given by their ordinals, and -1 stands for an unknown card.
+ * The bits are, from the lowest:
+ *   0-1 the observing player, 2-3 the number of players less 2, 4-5 the next player, 6-10 the size of the deck,
+ *   11-34 six bits for each player: the card they hold plus one (0 if it is not known), eliminated, and protected by the Handmaid,
+ *   35-48 the unseen count of each card, in as many bits as the card's count needs (3 for the Guard),
+ *   49-60 three bits for the score of each player.
+ * */
+public final class PackedState{
+
+  private static final int PLAYERS = 11; //the shift of the first player's bits
+  private static final int UNSEEN = 35; //the shift of the unseen counts
+  private static final int SCORES = 49; //the shift of the scores
+  private static final int[] UNSEEN_SHIFT = new int[8]; //the shift of each card's unseen count
+  private static final int[] UNSEEN_MASK = new int[8]; //the mask of each card's unseen count
+  static{
+    int shift = UNSEEN;
+    for(Card c: Card.values()){
+      UNSEEN_SHIFT[c.ordinal()] = shift;
+      UNSEEN_MASK[c.ordinal()] = Integer.highestOneBit(c.count())*2-1;
+      shift += Integer.bitCount(UNSEEN_MASK[c.ordinal()]);
+    }
+  }
+
+  private PackedState(){}
+
+  /**
+   * Packs the state of a round, as observed by a player
+   * @param observer the observing player
+   * @param num the number of players
+   * @param next the next player
+   * @param deckSize the size of the deck
+   * @param hand the card each player holds, or null if they are eliminated
+   * @param known whether the observer knows each player's card, or null if every card is known
+   * @param handmaid whether each player is protected by the Handmaid
+   * @param unseen the unseen count of each card
+   * @param scores the score of each player
+   * @return the packed state
+   * **/
+  static long pack(int observer, int num, int next, int deckSize, Card[] hand, boolean[] known, boolean[] handmaid, int[] unseen, int[] scores){
+    long w = observer | (num-2)<<2 | next<<4 | deckSize<<6;
+    for(int p = 0; p<num; p++){
+      long bits = hand[p]==null ? 16 : (known==null || known[p] ? hand[p].ordinal()+1 : 0) | (handmaid[p]?32:0);
+      w |= bits<<(PLAYERS+6*p);
+      w |= (long)scores[p]<<(SCORES+3*p);
+    }
+    for(int k = 0; k<8; k++) w |= (long)unseen[k]<<UNSEEN_SHIFT[k];
+    return w;
+  }
+
+  /**@param w the packed state
+   * @return the index of the observing player
+   * **/
+  public static int observer(long w){return (int)w&3;}
+
+  /**@param w the packed state
+   * @return the number of players in the game
+   * **/
+  public static int numPlayers(long w){return ((int)w>>2&3)+2;}
+
+  /**@param w the packed state
+   * @return the index of the next player to play
+   * **/
+  public static int nextPlayer(long w){return (int)w>>4&3;}
+
+  /**@param w the packed state
+   * @return the remaining size of the deck, including the burnt card
+   * **/
+  public static int deckSize(long w){return (int)w>>6&31;}
+
+  /**@param w the packed state
+   * @param player the index of a player
+   * @return the ordinal of the card the player holds, or -1 if it is not known or the player is eliminated
+   * **/
+  public static int card(long w, int player){return ((int)(w>>>(PLAYERS+6*player))&15)-1;}
+
+  /**@param w the packed state
+   * @param player the index of a player
+   * @return true if and only if the player is eliminated from the round
+   * **/
+  public static boolean eliminated(long w, int player){return (w>>>(PLAYERS+6*player+4)&1)!=0;}
+
+  /**@param w the packed state
+   * @param player the index of a player
+   * @return true if and only if the player is protected by the Handmaid
+   * **/
+  public static boolean handmaid(long w, int player){return (w>>>(PLAYERS+6*player+5)&1)!=0;}
+
+  /**@param w the packed state
+   * @param player the player who would be playing a card
+   * @return true if and only if every other player is eliminated or protected by the Handmaid
+   * **/
+  public static boolean allHandmaid(long w, int player){
+    for(int p = 0; p<numPlayers(w); p++)
+      if(p!=player && (w>>>(PLAYERS+6*p+4)&3)==0) return false;
+    return true;
+  }
+
+  /**@param w the packed state
+   * @param card the ordinal of a card
+   * @return the number of copies of the card not in the discard piles
+   * **/
+  public static int unseenCount(long w, int card){return (int)(w>>>UNSEEN_SHIFT[card])&UNSEEN_MASK[card];}
+
+  /**@param w the packed state
+   * @param player the index of a player
+   * @return the score of the player
+   * **/
+  public static int score(long w, int player){return (int)(w>>>(SCORES+3*player))&7;}
+}
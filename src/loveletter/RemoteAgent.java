@@ -0,0 +1,159 @@
+package loveletter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The engine's side of an agent running in another process, behind an AgentHost.
+ * The callbacks are sent over a non-blocking socket in the AgentProtocol.
+ * newRound and see expect no answer, so their messages are only buffered, and the whole batch
+ * is sent with the next playCard, which is the one round trip of a move.
+ * If the host fails or takes longer than the timeout to answer, the agent plays random moves from then on,
+ * so the game carries on.
+ * */
+public class RemoteAgent implements Agent, AutoCloseable{
+
+  private final InetSocketAddress address;
+  private final SocketChannel channel;
+  private final Selector selector; // waits for the socket to be ready, with a timeout
+  private final SelectionKey key;
+  private final long timeout; // the milliseconds allowed for the host to answer
+  private final ByteBuffer out = ByteBuffer.allocate(1<<12); // the messages not yet sent
+  private final ByteBuffer in = ByteBuffer.allocate(AgentProtocol.HEADER+4); // the answer to a PLAY
+  private IOException failure; // the reason the connection failed, or null if it is working
+  private final Agent fallback = new agents.RandomAgent(); // plays once the connection has failed
+
+  /**
+   * Connects to an agent host.
+   * @param address the address of the host
+   * @param timeout the milliseconds allowed for the host to answer each move
+   * @throws IOException if the host cannot be reached
+   * **/
+  public RemoteAgent(InetSocketAddress address, long timeout) throws IOException{
+    this.address = address;
+    this.timeout = timeout;
+    channel = SocketChannel.open(address);
+    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+    channel.configureBlocking(false);
+    selector = Selector.open();
+    key = channel.register(selector, 0);
+  }
+
+  /**
+   * Reports the agents name
+   * */
+  public String toString(){return "Remote Agent "+address.getHostString()+":"+address.getPort();}
+
+  /**
+   * Method called at the start of a round; buffered until the next move
+   * @param start the starting state of the round
+   **/
+  public void newRound(State start){
+    fallback.newRound(start);
+    if(failure!=null) return;
+    int frame = AgentProtocol.startFrame(out, AgentProtocol.NEW_ROUND);
+    start.writeView(out);
+    AgentProtocol.endFrame(out, frame);
+    sendIfFull();
+  }
+
+  /**
+   * Method called when any agent performs an action; buffered until the next move
+   * @param act the action an agent performs
+   * @param results the state of play the agent is able to observe.
+   * **/
+  public void see(Action act, State results){
+    fallback.see(act, results);
+    if(failure!=null) return;
+    int frame = AgentProtocol.startFrame(out, AgentProtocol.SEE);
+    AgentProtocol.writeAction(out, act);
+    results.writeView(out);
+    AgentProtocol.endFrame(out, frame);
+    sendIfFull();
+  }
+
+  /**
+   * Sends the buffered messages and the card drawn, and waits for the agent's action
+   * @param c the card drawn from the deck
+   * @return the action the agent chooses to perform, or a random action if the host failed or took too long
+   * */
+  public Action playCard(Card c){
+    if(failure!=null) return fallback.playCard(c);
+    int frame = AgentProtocol.startFrame(out, AgentProtocol.PLAY);
+    out.put((byte)c.ordinal());
+    AgentProtocol.endFrame(out, frame);
+    try{
+      long deadline = System.currentTimeMillis()+timeout;
+      send(deadline);
+      in.clear();
+      while(in.hasRemaining()){
+        int n = channel.read(in);
+        if(n<0) throw new EOFException("The agent host closed the connection");
+        if(n==0) await(SelectionKey.OP_READ, deadline);
+      }
+      in.flip();
+      if(in.getInt()!=4 || in.get()!=AgentProtocol.ACTION) throw new IOException("Unexpected message from the agent host");
+      return AgentProtocol.readAction(in);
+    }catch(IOException e){
+      fail(e);
+      return fallback.playCard(c);
+    }
+  }
+
+  /**
+   * @return the reason the connection to the host failed, or null if it is working
+   * **/
+  public IOException failure(){return failure;}
+
+  /**
+   * Closes the connection to the host, which ends the agent there.
+   * **/
+  public void close(){
+    try{
+      selector.close();
+      channel.close();
+    }catch(IOException e){/*closing anyway*/}
+  }
+
+  // sends the batch early if another message might not fit
+  private void sendIfFull(){
+    if(out.remaining()>=AgentProtocol.MAX_FRAME) return;
+    try{
+      send(System.currentTimeMillis()+timeout);
+    }catch(IOException e){
+      fail(e);
+    }
+  }
+
+  // writes the buffered messages, waiting while the socket's send buffer is full
+  private void send(long deadline) throws IOException{
+    out.flip();
+    while(out.hasRemaining()){
+      if(channel.write(out)==0) await(SelectionKey.OP_WRITE, deadline);
+    }
+    out.clear();
+  }
+
+  // waits until the socket is ready for an operation
+  private void await(int ops, long deadline) throws IOException{
+    long wait = deadline-System.currentTimeMillis();
+    if(wait<=0) throw new SocketTimeoutException("The agent host took longer than "+timeout+"ms");
+    key.interestOps(ops);
+    selector.select(wait);
+    selector.selectedKeys().clear();
+    key.interestOps(0);
+  }
+
+  // a late or partial answer would put the stream out of step, so a failed connection is not used again
+  private void fail(IOException e){
+    failure = e;
+    out.clear();
+    close();
+  }
+}
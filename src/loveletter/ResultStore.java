@@ -0,0 +1,405 @@
+package loveletter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * An append-only store of the results of games, a row for each game, kept in a directory by column:
+ * the seed, the number of players, and for each seat the agent, final score, and the number,
+ * total time and longest time of its decisions, and the rounds and moves of the game.
+ * Each column is a file of fixed width rows, memory mapped and grown by doubling, so a query
+ * reads only the columns it uses. A mapping holds at most 2GB, so a store holds at most MAX_ROWS
+ * games. The agents are stored as indices into a dictionary of names, names.txt, a name to a line.
+ * The number of rows is kept in its own mapped file, and is written after the row, so a query
+ * never sees half a row. Appends are synchronized, so the games of many threads can share a store.
+ * A query takes the number of rows and the mapped columns under the lock, then scans without it,
+ * as rows are never rewritten, so rows may be queried while others are appended.
+ * A query filters the rows, then summarises a value of each row, or of each seat of each row,
+ * in all or grouped by a key; e.g. the win rate of agent X in seat 3 of 4 player games is
+ * store.query().players(4).agent(3, X).summarise(r -> r.winner()==3 ? 1 : 0).mean().
+ * */
+public class ResultStore implements Closeable{
+
+  public static final int MAX_PLAYERS = 4;
+  private static final int INITIAL_ROWS = 1024; //the rows mapped when a store is created
+  /** the most games a store holds, as the widest column, 8 bytes for each seat, must map in 2GB **/
+  public static final int MAX_ROWS = Integer.MAX_VALUE/(8*MAX_PLAYERS);
+
+  private final Path dir;
+  private final Column seed = new Column("seed", 8);
+  private final Column players = new Column("players", 1);
+  private final Column agent = new Column("agent", 4*MAX_PLAYERS); //the index of each seat's agent, -1 for no player
+  private final Column score = new Column("score", MAX_PLAYERS);
+  private final Column rounds = new Column("rounds", 4);
+  private final Column moves = new Column("moves", 4);
+  private final Column decisions = new Column("decisions", 4*MAX_PLAYERS);
+  private final Column decisionNanos = new Column("decisionNanos", 8*MAX_PLAYERS);
+  private final Column maxDecisionNanos = new Column("maxDecisionNanos", 8*MAX_PLAYERS);
+  private final Column[] columns = {seed, players, agent, score, rounds, moves, decisions, decisionNanos, maxDecisionNanos};
+  private final FileChannel countChannel;
+  private final MappedByteBuffer count; //the number of rows, written after each row
+  private final List<String> names = new ArrayList<String>(); //the dictionary of agents
+  private final Map<String,Integer> index = new HashMap<String,Integer>(); //the index of each name
+  private int capacity; //the rows mapped in every column
+
+  /**
+   * A column file, mapped in full
+   * */
+  private class Column{
+    final String name;
+    final int width; //the bytes of a row
+    FileChannel channel;
+    MappedByteBuffer buffer;
+
+    Column(String name, int width){
+      this.name = name;
+      this.width = width;
+    }
+
+    // opens the file, and returns the rows it holds
+    long open() throws IOException{
+      channel = FileChannel.open(dir.resolve(name), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      return channel.size()/width;
+    }
+
+    // maps the file, growing it to hold the rows
+    MappedByteBuffer map(int rows) throws IOException{
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)rows*width);
+    }
+  }
+
+  /**
+   * Opens a store, creating it if the directory does not hold one
+   * @param dir the directory of the store
+   * @throws IOException if the store cannot be read or created
+   * **/
+  public ResultStore(Path dir) throws IOException{
+    this.dir = dir;
+    Files.createDirectories(dir);
+    long rows = Long.MAX_VALUE;
+    for(Column c: columns) rows = Math.min(rows, c.open());
+    capacity = (int)Math.min(MAX_ROWS, Math.max(INITIAL_ROWS, rows));
+    for(Column c: columns) c.buffer = c.map(capacity);
+    countChannel = FileChannel.open(dir.resolve("rows"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    count = countChannel.map(FileChannel.MapMode.READ_WRITE, 0, 4);
+    Path dictionary = dir.resolve("names.txt");
+    if(Files.exists(dictionary)) for(String name: Files.readAllLines(dictionary)) if(!name.isEmpty()) id(name);
+  }
+
+  // the index of a name, read from the dictionary
+  private int id(String name){
+    Integer i = index.get(name);
+    if(i!=null) return i;
+    index.put(name, names.size());
+    names.add(name);
+    return names.size()-1;
+  }
+
+  // the index of a name, added to the dictionary file if new
+  private int intern(String name) throws IOException{
+    if(index.containsKey(name)) return index.get(name);
+    if(name.isEmpty() || name.indexOf('\n')>=0) throw new IllegalArgumentException("An agent's name must be a line of text");
+    Files.writeString(dir.resolve("names.txt"), name+"\n", StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    return id(name);
+  }
+
+  /**@return the number of games stored**/
+  public synchronized int rows(){return count.getInt(0);}
+
+  /**
+   * Appends the result of a game
+   * @param seed the seed of the game
+   * @param agents the name of the agent in each seat
+   * @param scores the final score of each seat
+   * @param game the game played, for its rounds, moves and the times of the decisions
+   * @throws IOException if the store cannot be written, or holds MAX_ROWS games
+   * @throws IllegalArgumentException if there are not 2 to 4 agents, or a score for each
+   * **/
+  public synchronized void append(long seed, String[] agents, int[] scores, LoveLetter game) throws IOException{
+    int n = agents.length;
+    if(n<2 || n>MAX_PLAYERS || scores.length!=n)
+      throw new IllegalArgumentException("A game has 2 to 4 agents, each with a score");
+    int row = rows();
+    if(row==capacity) grow();
+    this.seed.buffer.putLong(row*8, seed);
+    players.buffer.put(row, (byte)n);
+    for(int s = 0; s<MAX_PLAYERS; s++){
+      agent.buffer.putInt((row*MAX_PLAYERS+s)*4, s<n ? intern(agents[s]) : -1);
+      score.buffer.put(row*MAX_PLAYERS+s, (byte)(s<n ? scores[s] : 0));
+      decisions.buffer.putInt((row*MAX_PLAYERS+s)*4, s<n ? game.decisions(s) : 0);
+      decisionNanos.buffer.putLong((row*MAX_PLAYERS+s)*8, s<n ? game.decisionNanos(s) : 0);
+      maxDecisionNanos.buffer.putLong((row*MAX_PLAYERS+s)*8, s<n ? game.maxDecisionNanos(s) : 0);
+    }
+    rounds.buffer.putInt(row*4, game.rounds());
+    moves.buffer.putInt(row*4, game.moves());
+    count.putInt(0, row+1);
+  }
+
+  // doubles the rows mapped in every column, up to MAX_ROWS, mapping them all before using any
+  private void grow() throws IOException{
+    if(capacity==MAX_ROWS) throw new IOException("The store "+dir+" is full, at "+MAX_ROWS+" games");
+    int rows = (int)Math.min(MAX_ROWS, 2L*capacity);
+    MappedByteBuffer[] buffers = new MappedByteBuffer[columns.length];
+    for(int i = 0; i<columns.length; i++) buffers[i] = columns[i].map(rows);
+    for(int i = 0; i<columns.length; i++) columns[i].buffer = buffers[i];
+    capacity = rows;
+  }
+
+  /**
+   * Writes the mapped columns to the disk, and closes the files
+   * @throws IOException if a file cannot be written
+   * **/
+  public synchronized void close() throws IOException{
+    for(Column c: columns){
+      c.buffer.force();
+      c.channel.close();
+    }
+    count.force();
+    countChannel.close();
+  }
+
+  /**@return a query of every row**/
+  public Query query(){return new Query();}
+
+  /**
+   * A row of the store, read from the columns as it is asked for,
+   * through the mappings and the dictionary of the store when the Row was made
+   * */
+  public class Row{
+    private int row;
+    private final MappedByteBuffer seedColumn = seed.buffer;
+    private final MappedByteBuffer playersColumn = players.buffer;
+    private final MappedByteBuffer agentColumn = agent.buffer;
+    private final MappedByteBuffer scoreColumn = score.buffer;
+    private final MappedByteBuffer roundsColumn = rounds.buffer;
+    private final MappedByteBuffer movesColumn = moves.buffer;
+    private final MappedByteBuffer decisionsColumn = decisions.buffer;
+    private final MappedByteBuffer decisionNanosColumn = decisionNanos.buffer;
+    private final MappedByteBuffer maxDecisionNanosColumn = maxDecisionNanos.buffer;
+    private final String[] agentNames = names.toArray(new String[0]);
+
+    // made while holding the store's lock
+    private Row(){}
+
+    /**@return the seed of the game**/
+    public long seed(){return seedColumn.getLong(row*8);}
+
+    /**@return the number of players**/
+    public int players(){return playersColumn.get(row);}
+
+    /**
+     * @param seat a seat
+     * @return the name of the agent in the seat, or null if there is none
+     * **/
+    public String agent(int seat){
+      int i = agentColumn.getInt((row*MAX_PLAYERS+seat)*4);
+      return i<0 ? null : agentNames[i];
+    }
+
+    /**
+     * @param seat a seat
+     * @return the final score of the seat
+     * **/
+    public int score(int seat){return scoreColumn.get(row*MAX_PLAYERS+seat);}
+
+    /**@return the seat of the highest score, the first if tied**/
+    public int winner(){
+      int winner = 0;
+      for(int s = 1; s<players(); s++)
+        if(score(s)>score(winner)) winner = s;
+      return winner;
+    }
+
+    /**@return the rounds of the game**/
+    public int rounds(){return roundsColumn.getInt(row*4);}
+
+    /**@return the moves of the game**/
+    public int moves(){return movesColumn.getInt(row*4);}
+
+    /**
+     * @param seat a seat
+     * @return the number of decisions of the seat's agent
+     * **/
+    public int decisions(int seat){return decisionsColumn.getInt((row*MAX_PLAYERS+seat)*4);}
+
+    /**
+     * @param seat a seat
+     * @return the mean nanoseconds of the decisions of the seat's agent
+     * **/
+    public double meanDecisionNanos(int seat){
+      int d = decisions(seat);
+      return d==0 ? 0 : (double)decisionNanosColumn.getLong((row*MAX_PLAYERS+seat)*8)/d;
+    }
+
+    /**
+     * @param seat a seat
+     * @return the nanoseconds of the slowest decision of the seat's agent
+     * **/
+    public long maxDecisionNanos(int seat){return maxDecisionNanosColumn.getLong((row*MAX_PLAYERS+seat)*8);}
+  }
+
+  /**
+   * A summary of values: their number, mean and standard error
+   * */
+  public static class Summary{
+    private long n;
+    private double sum;
+    private double sumSq;
+
+    private void add(double x){
+      n++;
+      sum += x;
+      sumSq += x*x;
+    }
+
+    /**@return the number of values**/
+    public long count(){return n;}
+
+    /**@return the mean of the values, or NaN if there are none**/
+    public double mean(){return n==0 ? Double.NaN : sum/n;}
+
+    /**@return the standard error of the mean, or NaN if there are fewer than 2 values**/
+    public double stdErr(){
+      if(n<2) return Double.NaN;
+      double mean = sum/n;
+      return Math.sqrt(Math.max(0, (sumSq-n*mean*mean)/(n-1))/n);
+    }
+
+    public String toString(){
+      return String.format("%.4f +/- %.4f (%d)", mean(), 1.96*stdErr(), n);
+    }
+  }
+
+  /**
+   * A query of the rows of the store, built up by filters, which the queries share
+   * */
+  public class Query{
+    private final List<Predicate<Row>> filters = new ArrayList<Predicate<Row>>();
+
+    /**
+     * Filters the rows
+     * @param filter true of the rows to keep
+     * @return this query
+     * **/
+    public Query where(Predicate<Row> filter){
+      filters.add(filter);
+      return this;
+    }
+
+    /**
+     * Keeps the games of a number of players
+     * @param n the number of players
+     * @return this query
+     * **/
+    public Query players(int n){return where(r -> r.players()==n);}
+
+    /**
+     * Keeps the games with an agent in a seat
+     * @param seat the seat
+     * @param name the name of the agent
+     * @return this query
+     * **/
+    public Query agent(int seat, String name){return where(r -> seat<r.players() && name.equals(r.agent(seat)));}
+
+    /**
+     * Keeps the games from a seed onwards
+     * @param first the first seed
+     * @return this query
+     * **/
+    public Query fromSeed(long first){return where(r -> r.seed()>=first);}
+
+    /**@return the number of rows kept**/
+    public int count(){return (int)summarise(r -> 0).count();}
+
+    /**
+     * Summarises a value of the rows kept
+     * @param value the value of a row
+     * @return the summary
+     * **/
+    public Summary summarise(ToDoubleFunction<Row> value){
+      return groupBy(r -> "", value).getOrDefault("", new Summary());
+    }
+
+    /**
+     * Summarises a value of the rows kept, grouped by a key
+     * @param key the key of a row, or null to leave the row out
+     * @param value the value of a row
+     * @return the summary of each key, in the order of the keys if they are comparable
+     * **/
+    public <K> Map<K,Summary> groupBy(Function<Row,K> key, ToDoubleFunction<Row> value){
+      return groupBySeat((r, s) -> s==0 ? key.apply(r) : null, (r, s) -> value.applyAsDouble(r));
+    }
+
+    /**
+     * Summarises a value of each seat of the rows kept, grouped by a key,
+     * e.g. the win rate of each agent: groupBySeat((r, s) -> r.agent(s), (r, s) -> r.winner()==s ? 1 : 0)
+     * @param key the key of a seat of a row, or null to leave the seat out
+     * @param value the value of a seat of a row
+     * @return the summary of each key, in the order of the keys if they are comparable
+     * **/
+    public <K> Map<K,Summary> groupBySeat(BiFunction<Row,Integer,K> key, ToDoubleBiFunction<Row,Integer> value){
+      Map<K,Summary> groups = new HashMap<K,Summary>();
+      Row r;
+      int rows;
+      synchronized(ResultStore.this){
+        r = new Row();
+        rows = rows();
+      }
+      scan:
+      for(r.row = 0; r.row<rows; r.row++){
+        for(Predicate<Row> f: filters) if(!f.test(r)) continue scan;
+        for(int s = 0; s<r.players(); s++){
+          K k = key.apply(r, s);
+          if(k!=null) groups.computeIfAbsent(k, x -> new Summary()).add(value.applyAsDouble(r, s));
+        }
+      }
+      boolean comparable = true;
+      for(K k: groups.keySet()) comparable &= k instanceof Comparable;
+      return comparable ? new TreeMap<K,Summary>(groups) : groups;
+    }
+  }
+
+  /**
+   * Prints the win rate and mean decision time of each agent in each seat, by the number of players
+   * @param ps the PrintStream to print to
+   * **/
+  public void report(PrintStream ps){
+    ps.println(rows()+" games");
+    for(int n = 2; n<=MAX_PLAYERS; n++){
+      Query q = query().players(n);
+      Map<String,Summary> wins = q.groupBySeat((r, s) -> r.agent(s)+" seat "+s, (r, s) -> r.winner()==s ? 1 : 0);
+      if(wins.isEmpty()) continue;
+      Map<String,Summary> times = q.groupBySeat((r, s) -> r.agent(s)+" seat "+s, (r, s) -> r.meanDecisionNanos(s)/1000);
+      ps.println(n+" player games: "+q.count());
+      for(String k: wins.keySet())
+        ps.printf("\t%-40s win rate %s, %.1f us a decision%n", k, wins.get(k), times.get(k).mean());
+    }
+  }
+
+  /**
+   * Prints the report of a store.
+   * Run with: java loveletter.ResultStore [directory]
+   * The default directory is results.
+   * */
+  public static void main(String[] args) throws IOException{
+    try(ResultStore store = new ResultStore(Paths.get(args.length>0 ? args[0] : "results"))){
+      store.report(System.out);
+    }
+  }
+}
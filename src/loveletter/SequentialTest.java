@@ -0,0 +1,95 @@
+package loveletter;
+
+/**
+ * A sequential probability ratio test of whether one agent is better than another by at least a margin,
+ * fed the difference of the agents' scores deal by deal (see DuplicateStats), which stops as soon as it decides.
+ * The hypotheses are that the mean difference of the agents' win rates is 0 (H0), or the margin (H1).
+ * As the differences are not binary, the test is the generalised SPRT with the normal approximation:
+ * the log likelihood ratio after n deals is n(m1-m0)(2d-m0-m1)/(2v), where d is the mean difference
+ * and v its sample variance, and the test accepts H1 when the ratio reaches log((1-beta)/alpha),
+ * or H0 when it falls to log(beta/(1-alpha)), so alpha and beta bound the probabilities of each mistake.
+ * */
+public class SequentialTest{
+
+  /**
+   * The state of the test
+   * */
+  public enum Decision {BETTER, NOT_BETTER, UNDECIDED}
+
+  private static final int MIN_DEALS = 20; //the deals needed before the variance is trusted
+  private static final double MIN_VARIANCE = 1e-6; //the variance assumed if every deal had the same difference
+
+  private final double margin; //the difference in win rate of H1
+  private final double alpha; //the probability of accepting H1 when H0 is true
+  private final double beta; //the probability of accepting H0 when H1 is true
+  private final double lower; //the log likelihood ratio accepting H0
+  private final double upper; //the log likelihood ratio accepting H1
+  private int n; //the number of differences added
+  private double sum; //the sum of the differences
+  private double sumSq; //the sum of the squares of the differences
+  private Decision decision = Decision.UNDECIDED;
+
+  /**
+   * Constructs a test
+   * @param margin the least difference in win rate worth detecting, e.g. 0.05
+   * @param alpha the probability of deciding an agent is better when it is not
+   * @param beta the probability of deciding an agent is not better when it is better by the margin
+   * @throws IllegalArgumentException if the margin is not positive, or an error rate is not between 0 and 0.5
+   * **/
+  public SequentialTest(double margin, double alpha, double beta){
+    if(margin<=0 || alpha<=0 || alpha>=0.5 || beta<=0 || beta>=0.5)
+      throw new IllegalArgumentException("The margin must be positive and the error rates between 0 and 0.5");
+    this.margin = margin;
+    this.alpha = alpha;
+    this.beta = beta;
+    lower = Math.log(beta/(1-alpha));
+    upper = Math.log((1-beta)/alpha);
+  }
+
+  /**
+   * Adds the difference of the agents' scores in a deal, and decides if there is evidence enough.
+   * Once decided, the decision stands, and further differences are ignored.
+   * @param difference the score of the first agent less the score of the second
+   * @return the decision
+   * **/
+  public Decision add(double difference){
+    if(decision!=Decision.UNDECIDED) return decision;
+    n++;
+    sum += difference;
+    sumSq += difference*difference;
+    if(n>=MIN_DEALS){
+      double llr = llr();
+      if(llr>=upper) decision = Decision.BETTER;
+      else if(llr<=lower) decision = Decision.NOT_BETTER;
+    }
+    return decision;
+  }
+
+  /**
+   * @return the log likelihood ratio of H1 to H0 of the differences added
+   * **/
+  public double llr(){
+    if(n<2) return 0;
+    double mean = sum/n;
+    double variance = Math.max(MIN_VARIANCE, (sumSq-n*mean*mean)/(n-1));
+    return n*margin*(2*mean-margin)/(2*variance);
+  }
+
+  /**@return the decision, UNDECIDED until the evidence is enough**/
+  public Decision decision(){return decision;}
+
+  /**@return the number of differences added before the decision**/
+  public int deals(){return n;}
+
+  /**@return the mean of the differences added**/
+  public double meanDifference(){return n==0 ? 0 : sum/n;}
+
+  /**
+   * Describes the test and its state
+   * @return the description
+   * **/
+  public String toString(){
+    return String.format("SPRT of a margin of %.3f (alpha %.3f, beta %.3f): %s after %d deals, LLR %.2f in [%.2f, %.2f]",
+      margin, alpha, beta, decision, n, llr(), lower, upper);
+  }
+}
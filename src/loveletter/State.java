@@ -12,6 +12,7 @@ public class State implements Cloneable{
   private int num; //The number of players in the game
   private Card[][] discards; //the discarded cards or each player
   private int[] discardCount; //how many cards each player has discarded
+  private int[] unseen; //how many copies of each card are not in a discard pile, indexed by the card's ordinal
   private Card[] hand; //the cards players currently hold, or null if the player has been eliminated 
   private Card[] deck; //the deck of remaining cards
   private int[] top; //the index of the top of the deck
@@ -21,6 +22,12 @@ public class State implements Cloneable{
   private java.util.Random random;
   private int[] nextPlayer; //the index of the next player to draw a card (using Object reference so value is shared).
   private Agent[] agents;
+  //the effects of the last action, kept by the game engine for the players' Observations
+  private boolean lastBlocked; //the target was protected by the Handmaid
+  private int lastEliminated = -1; //the player eliminated, or -1
+  private int lastDiscarder = -1; //the player who discarded a card besides the card played, or -1
+  private boolean lastSeen; //the actor saw the target's card
+  private boolean lastMutual; //the target also saw the actor's card
 
   /**
    * Default constructor to build the initial observed state for a player
@@ -53,6 +60,8 @@ public class State implements Cloneable{
     deck = Card.deal(random);
     discards = new Card[num][16];
     discardCount = new int[num];
+    unseen = new int[8];
+    for(Card c: Card.values()) unseen[c.ordinal()] = c.count();
     hand = new Card[num];
     handmaid = new boolean[num];
     top = new int[1];
@@ -163,11 +172,37 @@ public class State implements Cloneable{
    * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
    ***/
   public String update(Action act, Card card) throws IllegalActionException{
+    return execute(act.player(), act.target(), act.card(), act.guess(), card, act);
+  }
+
+  /**
+   * Executes an action coded as an ActionCode, for the player whose turn it is, without describing it.
+   * May only be called for non-player states (i.e. the omniscient game engine state)
+   * @param code the action code of the action to be performed
+   * @param card the card drawn by the actor
+   * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
+   ***/
+  public void update(int code, Card card) throws IllegalActionException{
+    int a = nextPlayer[0];
+    ActionCode.check(a, code, num);
+    execute(a, ActionCode.target(code), ActionCode.card(code), ActionCode.guess(code), card, null);
+  }
+
+  /**
+   * Executes an action, see update.
+   * @param a the actor
+   * @param t the target, or -1
+   * @param c the card played
+   * @param guess the guess of a Guard, or null
+   * @param card the card drawn by the actor
+   * @param act the action to describe, or null to execute it without a description
+   * @return a plain English description of the action, or null if act is null
+   * @throws IllegalActionAxception if the state is a player state, or if the action is against the rules. 
+   ***/
+  private String execute(int a, int t, Card c, Card guess, Card card, Action act) throws IllegalActionException{
     if(player!= -1)//Actions may only be executed from game states 
       throw new IllegalActionException("Method cannot be called from a player state");
-    int a = act.player();//actor
-    int t = act.target();//target
-    Card c = act.card();
+    boolean describe = act!=null;
     discards[a][discardCount[a]++] = c;//put played card on the top of the acting player's discard pile, required for checking actions.
     try{
        legalAction(a,t,c,card);
@@ -175,47 +210,51 @@ public class State implements Cloneable{
       discardCount[a]--;
       throw e;//reset discard top
     }
+    unseen[c.ordinal()]--;
+    lastBlocked = lastSeen = lastMutual = false;
+    lastEliminated = lastDiscarder = -1;
     if(c==hand[a]){//if the player played the card in their hand, insert the new card into their hand.
       hand[a]=card;
       for(int p = 0; p<num; p++)
         if(p!=a) known[p][a]=false;//rescind players knowledge if a known card was played
     }
     handmaid[a]=false;
-    String ret = act.toString(name(a), t!=-1?name(t):"");
+    String effect = null;//the description of the card's effect
     switch(c){
       case GUARD://actor plays the guard
-        ret+=guardAction(a,t,act.guess());
+        effect = guardAction(a,t,guess,describe);
         break;
       case PRIEST:
-        ret+=priestAction(a,t);
+        effect = priestAction(a,t,describe);
         break;
       case BARON:
-        ret+=baronAction(a,t);
+        effect = baronAction(a,t,describe);
         break;
       case HANDMAID:
         handmaid[a]=true;
         break;
       case PRINCE:
-        ret+= princeAction(t);  
+        effect = princeAction(t,describe);  
         break;
       case KING:
-        ret+= kingAction(a,t);
+        effect = kingAction(a,t,describe);
         break;
       case COUNTESS:  
         //no update required
         break;
       case PRINCESS:
-        ret+= princessAction(a);
+        effect = princessAction(a,describe);
         break;
       default: 
         throw new IllegalActionException("Illegal Action? Something's gone very wrong");
     }//end of switch
+    String ret = !describe ? null : act.toString(name(a), t!=-1?name(t):"")+(effect==null?"":effect);
     if(roundOver()){//check for round over
       for(int i = 0; i<num; i++)
        for(int p = 0; p<num; p++) 
          known[i][p]=true;
       int winner = roundWinner();
-      ret+="\nPlayer "+winner+" wins the round.";
+      if(describe) ret+="\nPlayer "+winner+" wins the round.";
       scores[winner]++;
       nextPlayer[0] = winner;
     }
@@ -226,63 +265,79 @@ public class State implements Cloneable{
     return ret;
   }
 
-  private String guardAction(int a, int t, Card guess){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
+  private String guardAction(int a, int t, Card guess, boolean describe){
+    if(lastBlocked = allHandmaid(a))
+      return !describe ? null : "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
     else if(guess==hand[t]){//correct guess, target eliminated
-      discards[t][discardCount[t]++] = hand[t];
+      discard(t, hand[t]);
       hand[t]=null;
+      lastEliminated = t;
       for(int p = 0; p<num; p++)known[p][t]=true;
-      return "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
+      return !describe ? null : "\nPlayer "+name(t)+" had the "+guess+" and is eliminated from the round";
     } 
-    else return "\nPlayer "+name(t)+" does not have the "+guess;
+    else return !describe ? null : "\nPlayer "+name(t)+" does not have the "+guess;
   }
 
-  private String priestAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
-    else known[a][t]=true;
-    return "\nPlayer "+name(a)+" sees player "+name(t)+"'s card.";
+  private String priestAction(int a, int t, boolean describe){
+    if(lastBlocked = allHandmaid(a))
+      return !describe ? null : "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
+    else known[a][t]=lastSeen=true;
+    return !describe ? null : "\nPlayer "+name(a)+" sees player "+name(t)+"'s card.";
   }
 
-  private String baronAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
+  private String baronAction(int a, int t, boolean describe){
+    if(lastBlocked = allHandmaid(a))
+      return !describe ? null : "\nPlayer "+name(t)+" is protected by the Handmaid.";//no effect action
     int elim = -1;
     if(hand[a].value()>hand[t].value()) elim = t;
     else if(hand[a].value()<hand[t].value()) elim = a;
     if(elim!=-1){
-      discards[elim][discardCount[elim]++] = hand[elim];
+      discard(elim, hand[elim]);
       hand[elim]=null;
+      lastEliminated = elim;
       for(int p = 0; p<num; p++) known[p][elim]=true;
-      return "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
+      return !describe ? null : "\nPlayer "+name(elim)+" holds the lesser card: "+discards[elim][discardCount[elim]-1]+", and is eliminated";
     }
     known[a][t]=true;
     known[t][a]=true;
-    return "\n Both players hold the same card, and neither is eliminated.";
+    lastSeen = lastMutual = true;
+    return !describe ? null : "\n Both players hold the same card, and neither is eliminated.";
+  }
+
+  /**
+   * puts a card on top of a player's discard pile, so it is no longer unseen
+   * @param p the index of the player
+   * @param c the card discarded
+   * **/
+  private void discard(int p, Card c){
+    discards[p][discardCount[p]++] = c;
+    unseen[c.ordinal()]--;
+    lastDiscarder = p;
   }
 
   //handmaid action requires no update
 
-  private String princeAction(int t){
+  private String princeAction(int t, boolean describe){
     Card discard = hand[t];
-    discards[t][discardCount[t]++] = discard;
+    discard(t, discard);
     if(discard==Card.PRINCESS){
       hand[t]=null;
+      lastEliminated = t;
       for(int p = 0; p<num; p++) known[p][t]=true;
-      return "\nPlayer "+name(t)+" discarded the Princess and is eliminated.";
+      return !describe ? null : "\nPlayer "+name(t)+" discarded the Princess and is eliminated.";
     }
     hand[t]=deck[top[0]++];
     for(int p =0; p<num;p++) 
       if(p!=t)known[p][t]=false;
-    return "\nPlayer "+name(t)+" discards the "+discard+".";
+    return !describe ? null : "\nPlayer "+name(t)+" discards the "+discard+".";
   }
 
-  private String kingAction(int a, int t){
-    if(allHandmaid(a))
-      return "\nPlayer "+name(t)+" is protected by the Handmaid.";
+  private String kingAction(int a, int t, boolean describe){
+    if(lastBlocked = allHandmaid(a))
+      return !describe ? null : "\nPlayer "+name(t)+" is protected by the Handmaid.";
     known[a][t]=true;
     known[t][a]=true;
+    lastSeen = lastMutual = true;
     for(int p =0; p<num;p++){ 
       if(p!=t && p!=a){
         boolean tmp = known[p][t];
@@ -293,20 +348,47 @@ public class State implements Cloneable{
     Card tmp = hand[a];
     hand[a] = hand[t];
     hand[t] = tmp;
-    return "\nPlayer "+name(a)+" and player "+name(t)+" swap cards.";
+    return !describe ? null : "\nPlayer "+name(a)+" and player "+name(t)+" swap cards.";
   }
 
   //countess action not required
   
-  private String princessAction(int a){
-    discards[a][discardCount[a]++] = hand[a];
+  private String princessAction(int a, boolean describe){
+    discard(a, hand[a]);
     hand[a]=null;
+    lastEliminated = a;
     for(int p = 0; p< num; p++) known[p][a]=true;
+    if(!describe) return null;
     String outcome =  "\nPlayer "+name(a)+" played the Princess and is eliminated.";
     outcome += "\n Player "+name(a)+" was also holding the "+discards[a][discardCount[a]-1]+".";
     return outcome;
   }
 
+  /**
+   * Describes the effects of the last action executed by update, as observed by a player.
+   * May only be called for the game engine state, which keeps the effects of the last action.
+   * @param act the action last executed
+   * @param observer the index of the observing player
+   * @return the observation of the action by the player
+   * **/
+  Observation observation(Action act, int observer){
+    int revealed = -1;
+    if(lastSeen && observer==act.player()) revealed = act.target();
+    else if(lastMutual && observer==act.target()) revealed = act.player();
+    return new Observation(act, observer, lastBlocked, lastEliminated,
+      lastDiscarder, lastDiscarder==-1?null:discards[lastDiscarder][discardCount[lastDiscarder]-1],
+      revealed, revealed==-1?null:hand[revealed]);
+  }
+
+  /**
+   * Packs the state of the round, as this player observes it, into a long for FastAgents, see PackedState.
+   * The game engine state packs every player's card, as observed by player 0.
+   * @return the packed state
+   * **/
+  public long pack(){
+    return PackedState.pack(player==-1?0:player, num, nextPlayer[0], deckSize(), hand, player==-1?null:known[player], handmaid, unseen, scores);
+  }
+
   /**
    * returns the index of the observing player, or -1 for perfect information.
    * @return the index of the observing player, or -1 for perfect information.
@@ -418,6 +500,16 @@ public class State implements Cloneable{
     return rem;
   }
 
+  /**
+   * gives the number of copies of a card that haven't been played yet, i.e. are not in the discard piles.
+   * The counts are kept up to date as cards are discarded, so this is a constant time lookup.
+   * @param c the card
+   * @return the number of copies of the card in the players' hands or the deck
+   * **/
+  public int unseenCount(Card c){
+    return unseen[c.ordinal()];
+  }
+
   /**
    * Tests to see if the round is over, either by all but one player being eliminated
    * or by all but one card being drawn from the deck.
@@ -482,9 +574,75 @@ public class State implements Cloneable{
     return -1;
   }
 
-}
 
+  /**
+   * Constructs a player's State from a view written by writeView, for an agent playing in another process.
+   * The view holds only what the player observes, so the hands the player does not know,
+   * and the deck, hold placeholder cards: getCard and the other observations are exact,
+   * but unseenCards and roundWinner, which look at hidden cards, are not.
+   * @param view the buffer holding the view
+   * **/
+  State(java.nio.ByteBuffer view){
+    readView(view);
+  }
 
+  /**
+   * Writes what the observing player can see of this State: the players, the next player, the deck size,
+   * and for each player their score, whether they are eliminated or protected by the Handmaid,
+   * their card if the observer knows it, and their discards.
+   * The view of a 4 player State is at most 84 bytes.
+   * @param out the buffer written to
+   * **/
+  void writeView(java.nio.ByteBuffer out){
+    out.put((byte)num).put((byte)player).put((byte)nextPlayer[0]).put((byte)deckSize());
+    for(int p = 0; p<num; p++){
+      Card c = getCard(p);
+      out.put((byte)scores[p]);
+      out.put((byte)((eliminated(p)?1:0) | (handmaid[p]?2:0)));
+      out.put((byte)(c==null?-1:c.ordinal()));
+      out.put((byte)discardCount[p]);
+      for(int j = 0; j<discardCount[p]; j++) out.put((byte)discards[p][j].ordinal());
+    }
+  }
 
-       
+  /**
+   * Replaces this State with a view written by writeView.
+   * The arrays are reused if the number of players is unchanged, so an agent holding this State sees the update.
+   * @param in the buffer holding the view
+   * **/
+  void readView(java.nio.ByteBuffer in){
+    int n = in.get();
+    player = in.get();
+    if(n!=num || hand==null){
+      num = n;
+      discards = new Card[num][16];
+      discardCount = new int[num];
+      unseen = new int[8];
+      hand = new Card[num];
+      handmaid = new boolean[num];
+      known = new boolean[num][num];
+      scores = new int[num];
+      deck = new Card[16];
+      top = new int[1];
+      nextPlayer = new int[1];
+    }
+    nextPlayer[0] = in.get();
+    top[0] = 16-in.get();
+    for(Card c: Card.values()) unseen[c.ordinal()] = c.count();
+    for(int p = 0; p<num; p++){
+      scores[p] = in.get();
+      int flags = in.get();
+      int card = in.get();
+      handmaid[p] = (flags&2)!=0;
+      known[player][p] = card>=0;
+      hand[p] = (flags&1)!=0 ? null : card>=0 ? Card.values()[card] : Card.GUARD;//a placeholder for a hidden card
+      discardCount[p] = in.get();
+      for(int j = 0; j<discardCount[p]; j++){
+        discards[p][j] = Card.values()[in.get()];
+        unseen[discards[p][j].ordinal()]--;
+      }
+    }
+    java.util.Arrays.fill(deck, top[0], 16, Card.GUARD);//placeholders for the hidden deck
+  }
 
+}
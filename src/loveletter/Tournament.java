@@ -0,0 +1,333 @@
+package loveletter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compares agents with duplicate deals.
+ * Every deal is played once for each rotation of the agents around the seats, from the same seed,
+ * so each agent plays each seat with the same cards (common random numbers for the engine's shuffles),
+ * and the luck of the deal cancels out when the agents' results are compared deal by deal, see DuplicateStats.
+ * The agents' own random choices are not shared, so the games of a deal still differ.
+ * Each game has fresh agents, made by the agents' suppliers.
+ * The deals can be shared between threads, each keeping its own statistics, which are merged
+ * into the tournament's at intervals, so the progress can be reported as the tournament goes.
+ * A long tournament can be checkpointed at each interval: the file holds the agents, the first seed,
+ * the number of deals, the deals completed (so their seeds) as a bit set, and the merged statistics, and is written
+ * to a temporary file and renamed over the old checkpoint, so a crash leaves one or the other whole.
+ * Run again with the same checkpoint, the tournament resumes, playing only the deals not completed,
+ * and as the statistics are sums of whole numbers the results are those of an uninterrupted run.
+ * Each game can also be recorded in a ResultStore, though the games of deals played after the last
+ * checkpoint of an interrupted tournament are recorded again when it resumes.
+ * */
+public class Tournament{
+
+  private final List<Supplier<Agent>> agents; //makes each agent for a game
+  private final String[] names; //the names of the agents
+  private final PrintStream ps; //where the games report illegal actions
+  private volatile ResultStore results; //where each game is recorded, or null
+  private static final long MERGE_NANOS = 100000000L; //how often a thread merges its statistics
+  private static final int CHECKPOINT_MAGIC = 0x54434b32; //"TCK2", the first bytes of a checkpoint
+
+  /**
+   * Constructs a tournament
+   * @param agents makes each agent for a game, 2, 3 or 4 of them
+   * @param names the names of the agents
+   * @param ps a PrintStream for the illegal actions reported by the games
+   * @throws IllegalArgumentException if there are not 2 to 4 agents, or a name for each
+   * **/
+  public Tournament(List<Supplier<Agent>> agents, String[] names, PrintStream ps){
+    if(agents.size()<2 || agents.size()>4 || names.length!=agents.size())
+      throw new IllegalArgumentException("A tournament needs 2 to 4 agents, each with a name");
+    this.agents = new ArrayList<Supplier<Agent>>(agents);
+    this.names = names.clone();
+    this.ps = ps;
+  }
+
+  /**
+   * Constructs a tournament of agent classes, which must have 0 parameter constructors
+   * @param classNames the names of the agent classes, e.g. agents.RandomAgent
+   * @param ps a PrintStream for the illegal actions reported by the games
+   * @return the tournament
+   * @throws IllegalArgumentException if a class cannot be found
+   * **/
+  public static Tournament of(String[] classNames, PrintStream ps){
+    List<Supplier<Agent>> agents = new ArrayList<Supplier<Agent>>();
+    for(String name: classNames) agents.add(supplier(name));
+    return new Tournament(agents, classNames, ps);
+  }
+
+  /**
+   * Makes a supplier of new agents of a class
+   * @param className the name of the agent class, which must have a 0 parameter constructor
+   * @return the supplier
+   * @throws IllegalArgumentException if the class cannot be found
+   * **/
+  public static Supplier<Agent> supplier(String className){
+    try{
+      Class<?> type = Class.forName(className);
+      return () -> {
+        try{
+          return (Agent)type.getDeclaredConstructor().newInstance();
+        }catch(ReflectiveOperationException e){
+          throw new IllegalArgumentException("Cannot construct "+className, e);
+        }
+      };
+    }catch(ClassNotFoundException e){
+      throw new IllegalArgumentException("No agent class "+className, e);
+    }
+  }
+
+  /**@return the number of agents, and so the number of games of each deal**/
+  public int numAgents(){return agents.size();}
+
+  /**@return the names of the agents**/
+  public String[] names(){return names.clone();}
+
+  /**
+   * Records each game played from now on in a store
+   * @param store the store, or null to stop recording
+   * **/
+  public void record(ResultStore store){results = store;}
+
+  /**
+   * Plays a deal in every rotation of the agents.
+   * If any game of the deal fails, none of its games are added, so every deal compared is complete.
+   * @param seed the seed of the deal
+   * @param stats the statistics the games and the deal are added to
+   * @return the number of games of the deal each agent won, or null if a game failed
+   * **/
+  public int[] playDeal(long seed, DuplicateStats stats){
+    int n = agents.size();
+    int[][] seatings = new int[n][n];
+    String[][] seatNames = new String[n][n];
+    LoveLetter[] games = new LoveLetter[n];
+    int[][] scores = new int[n][];
+    for(int r = 0; r<n; r++){
+      Agent[] seats = new Agent[n];
+      for(int s = 0; s<n; s++){
+        seatings[r][s] = (s+r)%n;
+        seats[s] = agents.get(seatings[r][s]).get();
+        seatNames[r][s] = names[seatings[r][s]];
+      }
+      games[r] = new LoveLetter(seed, ps, true);
+      scores[r] = games[r].playGame(seats);
+      if(scores[r]==null) return null; // the game went wrong, and has reported it, so the deal is left out
+    }
+    ResultStore store = results;
+    int[] wins = new int[n];
+    for(int r = 0; r<n; r++){
+      if(store!=null){
+        try{
+          store.append(seed, seatNames[r], scores[r], games[r]);
+        }catch(IOException e){
+          throw new IllegalStateException("Cannot record a game", e);
+        }
+      }
+      stats.addGame(seatings[r], scores[r], games[r].rounds(), games[r].moves());
+      int winner = 0;
+      for(int p = 1; p<n; p++)
+        if(scores[r][p]>scores[r][winner])winner = p;
+      wins[seatings[r][winner]]++;
+    }
+    stats.add(wins, n);
+    return wins;
+  }
+
+  /**
+   * Plays a duplicate tournament
+   * @param deals the number of deals
+   * @param firstSeed the seed of the first deal, the others following it
+   * @return the statistics of the tournament
+   * **/
+  public DuplicateStats duplicate(int deals, long firstSeed){
+    DuplicateStats stats = new DuplicateStats(names);
+    for(int d = 0; d<deals; d++) playDeal(firstSeed+d, stats);
+    return stats;
+  }
+
+  /**
+   * Plays a duplicate tournament on a number of threads, which take the deals in turn
+   * @param deals the number of deals
+   * @param firstSeed the seed of the first deal, the others following it
+   * @param threads the number of threads
+   * @param progress where to print a line of progress at each interval, or null for none
+   * @param interval the milliseconds between lines of progress
+   * @return the statistics of the tournament
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * @throws IllegalStateException if a game fails
+   * **/
+  public DuplicateStats run(int deals, long firstSeed, int threads, PrintStream progress, long interval) throws InterruptedException{
+    try{
+      return run(deals, firstSeed, threads, progress, interval, null);
+    }catch(IOException e){
+      throw new IllegalStateException("unreachable, there is no checkpoint", e);
+    }
+  }
+
+  /**
+   * Plays a duplicate tournament on a number of threads, which take the deals in turn,
+   * writing a checkpoint at each interval and at the end, and resuming from the checkpoint if it exists
+   * @param deals the number of deals
+   * @param firstSeed the seed of the first deal, the others following it
+   * @param threads the number of threads
+   * @param progress where to print a line of progress at each interval, or null for none
+   * @param interval the milliseconds between lines of progress and checkpoints
+   * @param checkpoint the checkpoint file, or null for none
+   * @return the statistics of the tournament
+   * @throws InterruptedException if interrupted while waiting for the threads
+   * @throws IOException if the checkpoint cannot be read or written
+   * @throws IllegalArgumentException if the checkpoint is of another tournament
+   * @throws IllegalStateException if a game fails
+   * **/
+  public DuplicateStats run(int deals, long firstSeed, int threads, PrintStream progress, long interval, Path checkpoint) throws InterruptedException, IOException{
+    DuplicateStats total = new DuplicateStats(names);
+    BitSet completed = new BitSet(deals); //the deals merged into the total
+    if(checkpoint!=null && Files.exists(checkpoint)) total = readCheckpoint(checkpoint, firstSeed, deals, completed);
+    long resumed = total.games();
+    DuplicateStats stats = total;
+    AtomicInteger next = new AtomicInteger(completed.nextClearBit(0));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<Future<?>>();
+    long start = System.nanoTime();
+    for(int t = 0; t<threads; t++){
+      workers.add(pool.submit(() -> {
+        DuplicateStats local = new DuplicateStats(names);
+        BitSet played = new BitSet();
+        long merged = System.nanoTime();
+        for(int d = nextDeal(next, completed, stats); d<deals; d = nextDeal(next, completed, stats)){
+          playDeal(firstSeed+d, local);
+          played.set(d);
+          if(System.nanoTime()-merged>MERGE_NANOS){
+            synchronized(stats){
+              stats.merge(local);
+              completed.or(played);
+            }
+            local = new DuplicateStats(names);
+            played.clear();
+            merged = System.nanoTime();
+          }
+        }
+        synchronized(stats){
+          stats.merge(local);
+          completed.or(played);
+        }
+        return null;
+      }));
+    }
+    pool.shutdown();
+    try{
+      while(!pool.awaitTermination(interval, TimeUnit.MILLISECONDS)){
+        synchronized(stats){
+          if(progress!=null) stats.progress(progress, (stats.games()-resumed)/((System.nanoTime()-start)/1e9));
+          if(checkpoint!=null) writeCheckpoint(checkpoint, firstSeed, deals, completed, stats);
+        }
+      }
+      for(Future<?> f: workers) f.get();
+      if(checkpoint!=null) writeCheckpoint(checkpoint, firstSeed, deals, completed, stats);
+    }catch(ExecutionException e){
+      throw new IllegalStateException("A game failed", e.getCause());
+    }finally{
+      pool.shutdownNow();
+    }
+    return stats;
+  }
+
+  // the next deal not completed before the tournament resumed
+  private static int nextDeal(AtomicInteger next, BitSet completed, Object lock){
+    while(true){
+      int d = next.getAndIncrement();
+      synchronized(lock){
+        if(!completed.get(d)) return d;
+      }
+    }
+  }
+
+  /**
+   * Writes a checkpoint to a temporary file and renames it over the checkpoint.
+   * The file is the magic number, the agents' names, the first seed, the number of deals,
+   * the bit set of the completed deals and the statistics.
+   * @param file the checkpoint file
+   * @param firstSeed the seed of the first deal
+   * @param deals the number of deals of the tournament
+   * @param completed the deals completed
+   * @param stats the statistics of the completed deals
+   * @throws IOException if the file cannot be written
+   * **/
+  private void writeCheckpoint(Path file, long firstSeed, int deals, BitSet completed, DuplicateStats stats) throws IOException{
+    Path tmp = file.resolveSibling(file.getFileName()+".tmp");
+    try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))){
+      out.writeInt(CHECKPOINT_MAGIC);
+      out.writeInt(names.length);
+      for(String name: names) out.writeUTF(name);
+      out.writeLong(firstSeed);
+      out.writeInt(deals);
+      long[] words = completed.toLongArray();
+      out.writeInt(words.length);
+      for(long w: words) out.writeLong(w);
+      stats.write(out);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Reads a checkpoint written by writeCheckpoint
+   * @param file the checkpoint file
+   * @param firstSeed the seed of the first deal, which must be the checkpoint's
+   * @param deals the number of deals, which must be the checkpoint's
+   * @param completed set to the deals completed
+   * @return the statistics of the completed deals
+   * @throws IOException if the file cannot be read
+   * @throws IllegalArgumentException if the file is not a checkpoint of this tournament
+   * **/
+  private DuplicateStats readCheckpoint(Path file, long firstSeed, int deals, BitSet completed) throws IOException{
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+      if(in.readInt()!=CHECKPOINT_MAGIC) throw new IllegalArgumentException(file+" is not a tournament checkpoint");
+      String[] saved = new String[in.readInt()];
+      for(int i = 0; i<saved.length; i++) saved[i] = in.readUTF();
+      if(!Arrays.equals(saved, names) || in.readLong()!=firstSeed || in.readInt()!=deals)
+        throw new IllegalArgumentException(file+" is the checkpoint of another tournament");
+      long[] words = new long[in.readInt()];
+      for(int i = 0; i<words.length; i++) words[i] = in.readLong();
+      completed.or(BitSet.valueOf(words));
+      return DuplicateStats.read(in, names);
+    }
+  }
+
+  /**
+   * Plays a duplicate tournament until a sequential test decides whether one agent is better than another,
+   * or a number of deals have been played; test.deals() gives the number of deals the decision took.
+   * @param test the test, fed the difference of the two agents' scores in each deal
+   * @param a the index of the agent tested for being better
+   * @param b the index of the agent it is compared with
+   * @param maxDeals the most deals to play, if the test does not decide
+   * @param firstSeed the seed of the first deal, the others following it
+   * @return the statistics of the deals played
+   * **/
+  public DuplicateStats sequential(SequentialTest test, int a, int b, int maxDeals, long firstSeed){
+    DuplicateStats stats = new DuplicateStats(names);
+    int games = agents.size();
+    for(int d = 0; d<maxDeals && test.decision()==SequentialTest.Decision.UNDECIDED; d++){
+      int[] wins = playDeal(firstSeed+d, stats);
+      if(wins!=null) test.add((double)(wins[a]-wins[b])/games);
+    }
+    return stats;
+  }
+}